@@ -3,6 +3,7 @@ import ca.stellardrift.build.common.configurate
 
 plugins {
     id("pex-component")
+    id("me.champeau.gradle.jmh") version "0.5.3"
 }
 
 useCheckerFramework()
@@ -20,3 +21,7 @@ dependencies {
     api(configurate("core", configurateVersion))
     api("org.slf4j:slf4j-api:$slf4jVersion")
 }
+
+jmh {
+    jmhVersion = "1.27"
+}
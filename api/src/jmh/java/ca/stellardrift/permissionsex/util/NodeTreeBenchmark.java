@@ -0,0 +1,146 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare node lookups against the regex-splitting implementation.
+ *
+ * <p>The {@code getSplitting} benchmarks measure {@link NodeTree#getSplitting(String)},
+ * which splits and lowercases the node the same way lookups did before they
+ * scanned it in place.</p>
+ *
+ * <p>Run with {@code ./gradlew :api:jmh}. Allocation rates can be compared by
+ * adding the {@code gc} profiler.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeTreeBenchmark {
+    private static final String[] PLUGINS = {"worldedit", "essentials", "minecraft", "luckyblocks", "chestshop"};
+    private static final String[] ACTIONS = {"command", "use", "place", "break", "admin", "region"};
+
+    private NodeTree tree;
+    private NodeTree frozen;
+    private String hit;
+    private String deepMiss;
+    private String rootMiss;
+    private PermissionKey hitKey;
+    private PermissionKey deepMissKey;
+
+    @Setup
+    public void setup() {
+        final Map<String, Integer> values = new HashMap<>();
+        for (final String plugin : PLUGINS) {
+            values.put(plugin, 1);
+            for (final String action : ACTIONS) {
+                for (int i = 0; i < 20; i++) {
+                    values.put(plugin + '.' + action + ".node" + i, i % 3 == 0 ? -1 : 1);
+                }
+            }
+        }
+        this.tree = NodeTree.of(values);
+        this.frozen = this.tree.freeze();
+        this.hit = "WorldEdit.region.node13";
+        this.deepMiss = "essentials.command.node7.child.grandchild";
+        this.rootMiss = "unknown.plugin.permission";
+        this.hitKey = PermissionKey.of(this.hit);
+        this.deepMissKey = PermissionKey.of(this.deepMiss);
+    }
+
+    @Benchmark
+    public int getHit() {
+        return this.tree.get(this.hit);
+    }
+
+    @Benchmark
+    public int getSplittingHit() {
+        return this.tree.getSplitting(this.hit);
+    }
+
+    @Benchmark
+    public int getFrozenHit() {
+        return this.frozen.get(this.hit);
+    }
+
+    @Benchmark
+    public int getDeepMiss() {
+        return this.tree.get(this.deepMiss);
+    }
+
+    @Benchmark
+    public int getSplittingDeepMiss() {
+        return this.tree.getSplitting(this.deepMiss);
+    }
+
+    @Benchmark
+    public int getFrozenDeepMiss() {
+        return this.frozen.get(this.deepMiss);
+    }
+
+    @Benchmark
+    public int getRootMiss() {
+        return this.tree.get(this.rootMiss);
+    }
+
+    @Benchmark
+    public int getSplittingRootMiss() {
+        return this.tree.getSplitting(this.rootMiss);
+    }
+
+    @Benchmark
+    public int getFrozenRootMiss() {
+        return this.frozen.get(this.rootMiss);
+    }
+
+    @Benchmark
+    public int getKeyHit() {
+        return this.tree.get(this.hitKey);
+    }
+
+    @Benchmark
+    public int getFrozenKeyHit() {
+        return this.frozen.get(this.hitKey);
+    }
+
+    @Benchmark
+    public int getKeyDeepMiss() {
+        return this.tree.get(this.deepMissKey);
+    }
+
+    @Benchmark
+    public int getFrozenKeyDeepMiss() {
+        return this.frozen.get(this.deepMissKey);
+    }
+}
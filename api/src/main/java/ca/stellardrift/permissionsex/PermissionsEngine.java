@@ -19,6 +19,7 @@ package ca.stellardrift.permissionsex;
 import ca.stellardrift.permissionsex.context.ContextDefinitionProvider;
 import ca.stellardrift.permissionsex.context.ContextInheritance;
 import ca.stellardrift.permissionsex.datastore.DataStore;
+import ca.stellardrift.permissionsex.metrics.MetricRegistry;
 import ca.stellardrift.permissionsex.rank.RankLadderCollection;
 import ca.stellardrift.permissionsex.subject.CalculatedSubject;
 import ca.stellardrift.permissionsex.subject.SubjectRef;
@@ -223,4 +224,15 @@ public interface PermissionsEngine extends ContextDefinitionProvider {
      */
     void debugMode(final boolean enabled, final @Nullable Pattern filter);
 
+    /**
+     * Get the metrics recorded by this engine.
+     *
+     * <p>This includes cache statistics, bake and data store timings, and executor queue depth.
+     * Data stores and other extensions may register their own metrics.</p>
+     *
+     * @return the metric registry
+     * @since 2.0.0
+     */
+    MetricRegistry metrics();
+
 }
@@ -18,7 +18,6 @@ package ca.stellardrift.permissionsex.context;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
 
-import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -29,7 +28,7 @@ import java.util.concurrent.CompletableFuture;
  * @since 2.0.0
  */
 public interface ContextDefinitionProvider {
-    Set<ContextValue<?>> GLOBAL_CONTEXT = Collections.emptySet();
+    Set<ContextValue<?>> GLOBAL_CONTEXT = ContextSet.empty();
 
     CompletableFuture<Set<ContextDefinition<?>>> usedContextTypes(); // TODO: part of PermissionsEngine instead?
 
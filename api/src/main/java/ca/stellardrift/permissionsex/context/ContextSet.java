@@ -0,0 +1,280 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.context;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An immutable set of context values.
+ *
+ * <p>Values are stored sorted by key and raw value, and the hash code is computed once.
+ * Every context set is interned, so two context sets created from equal values while
+ * either is still reachable will be the same instance. This makes context sets cheap
+ * to use as map keys, and any API accepting a {@code Set<ContextValue<?>>} will use a
+ * context set as-is rather than converting it.</p>
+ *
+ * <p>Context sets are equal to any other {@link Set} containing the same values.</p>
+ *
+ * @since 2.0.0
+ */
+public final class ContextSet extends AbstractSet<ContextValue<?>> {
+    private static final Comparator<ContextValue<?>> ORDER = Comparator.<ContextValue<?>, String>comparing(ContextValue::key)
+        .thenComparing(ContextValue::rawValue);
+    private static final Map<PoolEntry, PoolEntry> POOL = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<ContextSet> COLLECTED = new ReferenceQueue<>();
+    private static final ContextSet EMPTY = new ContextSet(new ContextValue<?>[0]);
+
+    private final ContextValue<?>[] values;
+    private final int hashCode;
+
+    private ContextSet(final ContextValue<?>[] values) {
+        this.values = values;
+        int hash = 0;
+        for (final ContextValue<?> value : values) {
+            hash += value.hashCode();
+        }
+        this.hashCode = hash;
+    }
+
+    /**
+     * Get the empty context set, representing the global context.
+     *
+     * @return the empty context set
+     * @since 2.0.0
+     */
+    public static ContextSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Get a context set containing the provided values.
+     *
+     * @param values the context values
+     * @return an interned context set
+     * @since 2.0.0
+     */
+    public static ContextSet of(final ContextValue<?>... values) {
+        return of(Arrays.asList(values));
+    }
+
+    /**
+     * Get a context set containing the provided values.
+     *
+     * <p>If {@code values} is already a context set, it will be returned unchanged.</p>
+     *
+     * @param values the context values
+     * @return an interned context set
+     * @since 2.0.0
+     */
+    public static ContextSet of(final Collection<? extends ContextValue<?>> values) {
+        if (values instanceof ContextSet) {
+            return (ContextSet) values;
+        } else if (values.isEmpty()) {
+            return EMPTY;
+        }
+
+        final ContextValue<?>[] sorted = values.toArray(new ContextValue<?>[0]);
+        Arrays.sort(sorted, ORDER);
+        int size = 0;
+        for (final ContextValue<?> value : sorted) {
+            requireNonNull(value, "value");
+            if (size == 0 || ORDER.compare(sorted[size - 1], value) != 0) {
+                sorted[size++] = value;
+            }
+        }
+        return intern(new ContextSet(size == sorted.length ? sorted : Arrays.copyOf(sorted, size)));
+    }
+
+    private static ContextSet intern(final ContextSet candidate) {
+        @Nullable Reference<? extends ContextSet> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            POOL.remove(collected, collected);
+        }
+
+        final PoolEntry entry = new PoolEntry(candidate);
+        while (true) {
+            final @Nullable PoolEntry existing = POOL.putIfAbsent(entry, entry);
+            if (existing == null) {
+                return candidate;
+            }
+            final @Nullable ContextSet existingSet = existing.get();
+            if (existingSet != null) {
+                return existingSet;
+            }
+            POOL.remove(existing, existing); // collected since it was found
+        }
+    }
+
+    /**
+     * Get a context set with one value added.
+     *
+     * @param value the value to add
+     * @return an interned context set
+     * @since 2.0.0
+     */
+    public ContextSet with(final ContextValue<?> value) {
+        if (this.contains(requireNonNull(value, "value"))) {
+            return this;
+        }
+        final ContextValue<?>[] values = Arrays.copyOf(this.values, this.values.length + 1);
+        values[this.values.length] = value;
+        return of(Arrays.asList(values));
+    }
+
+    /**
+     * Get a context set with one value removed.
+     *
+     * @param value the value to remove
+     * @return an interned context set
+     * @since 2.0.0
+     */
+    public ContextSet without(final ContextValue<?> value) {
+        final int idx = Arrays.binarySearch(this.values, requireNonNull(value, "value"), ORDER);
+        if (idx < 0) {
+            return this;
+        }
+        final ContextValue<?>[] values = new ContextValue<?>[this.values.length - 1];
+        System.arraycopy(this.values, 0, values, 0, idx);
+        System.arraycopy(this.values, idx + 1, values, idx, values.length - idx);
+        return values.length == 0 ? EMPTY : intern(new ContextSet(values));
+    }
+
+    @Override
+    public boolean contains(final @Nullable Object o) {
+        if (!(o instanceof ContextValue<?>)) {
+            return false;
+        }
+        return Arrays.binarySearch(this.values, (ContextValue<?>) o, ORDER) >= 0;
+    }
+
+    @Override
+    public boolean containsAll(final Collection<?> c) {
+        if (c instanceof ContextSet) {
+            final ContextValue<?>[] other = ((ContextSet) c).values;
+            if (other.length > this.values.length) {
+                return false;
+            }
+            int i = 0;
+            for (final ContextValue<?> value : other) { // both are sorted, so merge
+                while (i < this.values.length && ORDER.compare(this.values[i], value) < 0) {
+                    i++;
+                }
+                if (i == this.values.length || ORDER.compare(this.values[i], value) != 0) {
+                    return false;
+                }
+                i++;
+            }
+            return true;
+        }
+        return super.containsAll(c);
+    }
+
+    @Override
+    public Iterator<ContextValue<?>> iterator() {
+        return new Iterator<ContextValue<?>>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < ContextSet.this.values.length;
+            }
+
+            @Override
+            public ContextValue<?> next() {
+                if (this.next >= ContextSet.this.values.length) {
+                    throw new NoSuchElementException();
+                }
+                return ContextSet.this.values[this.next++];
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return this.values.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.values.length == 0;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return this.values.clone();
+    }
+
+    @Override
+    public boolean equals(final @Nullable Object other) {
+        if (this == other) {
+            return true;
+        } else if (other instanceof ContextSet) {
+            final ContextSet that = (ContextSet) other;
+            return this.hashCode == that.hashCode && Arrays.equals(this.values, that.values);
+        } else {
+            return other instanceof Set<?> && super.equals(other);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    /**
+     * A weakly held context set in the pool, equal to any entry for an equal set.
+     */
+    private static final class PoolEntry extends WeakReference<ContextSet> {
+        private final int hashCode;
+
+        PoolEntry(final ContextSet set) {
+            super(set, COLLECTED);
+            this.hashCode = set.hashCode;
+        }
+
+        @Override
+        public boolean equals(final @Nullable Object other) {
+            if (this == other) {
+                return true;
+            } else if (!(other instanceof PoolEntry) || this.hashCode != other.hashCode()) {
+                return false;
+            }
+            final @Nullable ContextSet set = this.get();
+            return set != null && set.equals(((PoolEntry) other).get());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+}
@@ -31,6 +31,41 @@ import java.util.Set;
  */
 public interface PermissionCheckNotifier {
     void onPermissionCheck(SubjectRef<?> subject, Set<ContextValue<?>> contexts, String permission, int value);
+
+    /**
+     * Called when several permissions are checked at once for the same subject.
+     *
+     * <p>By default, this reports each check individually.</p>
+     *
+     * @param subject the subject checked
+     * @param contexts the contexts checked in
+     * @param permissions the permissions checked
+     * @param values the resulting values, in the same order as {@code permissions}. This array must not be modified
+     * @since 2.0.0
+     */
+    default void onPermissionChecks(final SubjectRef<?> subject, final Set<ContextValue<?>> contexts, final List<String> permissions, final int[] values) {
+        for (int i = 0; i < values.length; i++) {
+            this.onPermissionCheck(subject, contexts, permissions.get(i), values[i]);
+        }
+    }
+
+    /**
+     * Called when one permission is checked for several subjects at once.
+     *
+     * <p>By default, this reports each check individually.</p>
+     *
+     * @param permission the permission checked
+     * @param subjects the subjects checked
+     * @param contexts the contexts each subject was checked in, in the same order as {@code subjects}
+     * @param values the resulting values, in the same order as {@code subjects}. This array must not be modified
+     * @since 2.0.0
+     */
+    default void onPermissionCheckAll(final String permission, final List<? extends SubjectRef<?>> subjects, final List<? extends Set<ContextValue<?>>> contexts, final int[] values) {
+        for (int i = 0; i < values.length; i++) {
+            this.onPermissionCheck(subjects.get(i), contexts.get(i), permission, values[i]);
+        }
+    }
+
     void onOptionCheck(SubjectRef<?> subject, Set<ContextValue<?>> contexts, String option, @Nullable String value);
     void onParentCheck(SubjectRef<?> subject, Set<ContextValue<?>> contexts, List<SubjectRef<?>> parents);
 }
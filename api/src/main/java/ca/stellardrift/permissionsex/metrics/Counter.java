@@ -0,0 +1,50 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.metrics;
+
+/**
+ * A count of events that only ever increases.
+ *
+ * @since 2.0.0
+ */
+public interface Counter {
+
+    /**
+     * Count one event.
+     *
+     * @since 2.0.0
+     */
+    default void increment() {
+        this.add(1);
+    }
+
+    /**
+     * Count several events.
+     *
+     * @param amount the number of events
+     * @since 2.0.0
+     */
+    void add(long amount);
+
+    /**
+     * Get the number of events counted.
+     *
+     * @return the count
+     * @since 2.0.0
+     */
+    long count();
+}
@@ -0,0 +1,74 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.metrics;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A registry of named measurements taken by a permissions engine.
+ *
+ * <p>Names are dot-separated, for example {@code cache.baked.hits}. Metrics are created on first
+ * access, and the same instance is returned for later requests with the same name.</p>
+ *
+ * @since 2.0.0
+ */
+public interface MetricRegistry {
+
+    /**
+     * Get or create a counter.
+     *
+     * @param name the counter name
+     * @return the counter
+     * @throws IllegalArgumentException if another kind of metric has this name
+     * @since 2.0.0
+     */
+    Counter counter(String name);
+
+    /**
+     * Get or create a timer.
+     *
+     * @param name the timer name
+     * @return the timer
+     * @throws IllegalArgumentException if another kind of metric has this name
+     * @since 2.0.0
+     */
+    Timer timer(String name);
+
+    /**
+     * Register a gauge, replacing any existing gauge with the same name.
+     *
+     * <p>The supplier will be called every time metrics are read, so it should be cheap.</p>
+     *
+     * @param name the gauge name
+     * @param value a supplier for the current value
+     * @throws IllegalArgumentException if another kind of metric has this name
+     * @since 2.0.0
+     */
+    void gauge(String name, Supplier<? extends Number> value);
+
+    /**
+     * Get the current value of every metric, sorted by name.
+     *
+     * <p>Counters and gauges appear under their own name. Each timer appears as several values,
+     * suffixed with {@code .count}, {@code .mean-nanos}, {@code .p50-nanos}, and {@code .p99-nanos}.</p>
+     *
+     * @return a snapshot of metric values
+     * @since 2.0.0
+     */
+    Map<String, Number> snapshot();
+}
@@ -0,0 +1,61 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * A distribution of durations.
+ *
+ * @since 2.0.0
+ */
+public interface Timer {
+
+    /**
+     * Record one duration.
+     *
+     * @param nanos the duration, in nanoseconds
+     * @since 2.0.0
+     */
+    void record(long nanos);
+
+    /**
+     * Get the number of durations recorded.
+     *
+     * @return the count
+     * @since 2.0.0
+     */
+    long count();
+
+    /**
+     * Time an asynchronous action, from when it is started until its result completes.
+     *
+     * <p>Actions that complete exceptionally are also recorded.</p>
+     *
+     * @param action the action to start
+     * @param <V> the result type
+     * @return the action's result
+     * @since 2.0.0
+     */
+    default <V> CompletableFuture<V> timeAsync(final Supplier<CompletableFuture<V>> action) {
+        final long start = System.nanoTime();
+        final CompletableFuture<V> result = action.get();
+        result.whenComplete((value, error) -> this.record(System.nanoTime() - start));
+        return result;
+    }
+}
@@ -19,9 +19,11 @@ package ca.stellardrift.permissionsex.subject;
 import ca.stellardrift.permissionsex.context.ContextValue;
 import ca.stellardrift.permissionsex.logging.PermissionCheckNotifier;
 import ca.stellardrift.permissionsex.util.NodeTree;
+import ca.stellardrift.permissionsex.util.PermissionKey;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.spongepowered.configurate.ConfigurationNode;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -98,6 +100,15 @@ public interface CalculatedSubject {
      */
     List<SubjectRef<?>> parents(Set<ContextValue<?>> contexts);
 
+    /**
+     * Get the contexts currently active for this subject.
+     *
+     * <p>The returned set is an immutable {@link ca.stellardrift.permissionsex.context.ContextSet},
+     * so it can be passed to any query method without being converted. To build a different
+     * set of contexts from it, make a copy first.</p>
+     *
+     * @return the active contexts
+     */
     Set<ContextValue<?>> activeContexts();
 
     CompletableFuture<Set<ContextValue<?>>> usedContextValues();
@@ -129,6 +140,53 @@ public interface CalculatedSubject {
      */
     int permission(Set<ContextValue<?>> contexts, String permission);
 
+    /**
+     * Query a pre-resolved permission in this subject's active contexts.
+     *
+     * <p>Any checks made through this method will be logged by the {@link PermissionCheckNotifier}
+     * registered with the PEX engine.</p>
+     *
+     * @param permission The permission to query
+     * @return The permission value. &lt;0 evaluates to false, 0 is undefined, and &gt;0 evaluates to true.
+     * @see PermissionKey#of(String)
+     */
+    default int permission(final PermissionKey permission) {
+        return permission(activeContexts(), permission);
+    }
+
+    /**
+     * Query a pre-resolved permission in a certain set of contexts.
+     *
+     * <p>This is equivalent to {@link #permission(Set, String)}, but will not parse the
+     * permission on every check.</p>
+     *
+     * <p>Any checks made through this method will be logged by the {@link PermissionCheckNotifier}
+     * registered with the PEX engine.</p>
+     *
+     * @param contexts The contexts to check in
+     * @param permission The permission to query
+     * @return The permission value. &lt;0 evaluates to false, 0 is undefined, and &gt;0 evaluates to true.
+     * @see PermissionKey#of(String)
+     */
+    int permission(Set<ContextValue<?>> contexts, PermissionKey permission);
+
+    /**
+     * Query several permissions at once in a certain set of contexts.
+     *
+     * <p>This is equivalent to calling {@link #permission(Set, String)} for each permission,
+     * but only looks up this subject's calculated data once.</p>
+     *
+     * <p>All checks made through this method will be logged by the {@link PermissionCheckNotifier}
+     * registered with the PEX engine, as one batch.</p>
+     *
+     * @param contexts The contexts to check in
+     * @param permissions The permissions to query
+     * @return The permission values, in the iteration order of {@code permissions}.
+     *     &lt;0 evaluates to false, 0 is undefined, and &gt;0 evaluates to true.
+     * @since 2.0.0
+     */
+    int[] permissions(Set<ContextValue<?>> contexts, Collection<String> permissions);
+
     /**
      * Query whether this subject has a specific permission in this subject's active contexts
      * This method takes into account context and wildcard inheritance calculations for any permission.
@@ -156,6 +214,20 @@ public interface CalculatedSubject {
      */
     boolean hasPermission(Set<ContextValue<?>> contexts, String permission);
 
+    /**
+     * Query whether this subject has a pre-resolved permission in the provided contexts.
+     *
+     * <p>Any checks made through this method will be logged by the {@link PermissionCheckNotifier}
+     * registered with the PEX engine.</p>
+     *
+     * @param contexts The contexts to query this permission in
+     * @param permission The permission to query
+     * @return Whether the subject has a true permissions value
+     */
+    default boolean hasPermission(final Set<ContextValue<?>> contexts, final PermissionKey permission) {
+        return this.permission(contexts, permission) > 0;
+    }
+
     /**
      * Get an option that may be present for a certain subject in the subject's active contexts
      *
@@ -241,4 +313,40 @@ public interface CalculatedSubject {
     void registerListener(Consumer<CalculatedSubject> listener);
 
     void unregisterListener(Consumer<CalculatedSubject> listener);
+
+    /**
+     * Register a listener that will receive the permissions that change for this subject.
+     *
+     * <p>When this subject or one of its parents is updated, the contexts that have
+     * recently been queried are re-calculated, and the listener receives only the
+     * nodes whose values changed in each of them. Changes made through the other update
+     * listeners are still delivered as usual.</p>
+     *
+     * A reference to the listener will be held, so when updates are no longer needed the listener should be unregistered
+     *
+     * @param listener The listener
+     * @see NodeTree#diff(NodeTree)
+     * @since 2.0.0
+     */
+    void registerPermissionListener(PermissionListener listener);
+
+    void unregisterPermissionListener(PermissionListener listener);
+
+    /**
+     * A listener for changes to the calculated permissions of a subject.
+     *
+     * @since 2.0.0
+     */
+    @FunctionalInterface
+    interface PermissionListener {
+
+        /**
+         * Receive the permissions that changed in a set of contexts.
+         *
+         * @param subject the subject whose permissions changed
+         * @param contexts the contexts the permissions were calculated in
+         * @param changes a map of changed nodes to their new value, as returned by {@link NodeTree#diff(NodeTree)}
+         */
+        void permissionsChanged(CalculatedSubject subject, Set<ContextValue<?>> contexts, Map<String, Integer> changes);
+    }
 }
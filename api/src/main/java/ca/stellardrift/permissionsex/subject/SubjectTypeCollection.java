@@ -16,7 +16,12 @@
  */
 package ca.stellardrift.permissionsex.subject;
 
+import ca.stellardrift.permissionsex.context.ContextValue;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
 import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
@@ -55,6 +60,40 @@ public interface SubjectTypeCollection<I> {
      */
     Collection<CalculatedSubject> activeSubjects();
 
+    /**
+     * Check one permission for every active subject, each in its own active contexts.
+     *
+     * <p>The permission is only resolved once for all subjects, and the checks are reported
+     * together. Subjects that are still being loaded are not included.</p>
+     *
+     * <p>Like any other permission check, this waits for the data of every subject whose
+     * data has not yet been calculated for the contexts checked, so it may block on
+     * those calculations.</p>
+     *
+     * @param permission the permission to check
+     * @return a map of subject identifiers to permission values
+     * @since 2.0.0
+     */
+    Map<I, Integer> checkAll(String permission);
+
+    /**
+     * Check one permission for every active subject, in a certain set of contexts.
+     *
+     * <p>The permission is only resolved once for all subjects, and the checks are reported
+     * together. Subjects that are still being loaded are not included.</p>
+     *
+     * <p>Like any other permission check, this waits for the data of every subject whose
+     * data has not yet been calculated for the contexts checked, so it may block on
+     * those calculations.</p>
+     *
+     * @param permission the permission to check
+     * @param contexts the contexts to check in, or {@code null} to check each subject in its
+     *     own active contexts, as {@link #checkAll(String)} does
+     * @return a map of subject identifiers to permission values
+     * @since 2.0.0
+     */
+    Map<I, Integer> checkAll(String permission, @Nullable Set<ContextValue<?>> contexts);
+
     /**
      * Request that a given identifier be removed from the cached data stores.
      *
@@ -0,0 +1,575 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.util;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * A read-only node tree packed into flat arrays.
+ *
+ * <p>Nodes are stored in breadth-first order, with the root at index {@code 0}.
+ * The children of node {@code n} occupy the range
+ * {@code [childStart[n], childStart[n + 1])}, sorted by the hash code of their
+ * segment and then by the segment itself. Since children of consecutive nodes are themselves consecutive, every level
+ * below a node is a single range as well.</p>
+ *
+ * <p>Children are found through a single open-addressed table for the whole
+ * tree, keyed by parent and segment hash. An entry belongs to a parent when it
+ * falls within that parent's range, so no further data is needed per node.</p>
+ *
+ * <p>Each node also holds a summary of the extreme values beneath it, used to
+ * answer {@link NodeTree#GRANTED} and {@link NodeTree#DENIED} prefix queries.</p>
+ *
+ * <p>Since the layout is fully determined by the tree's contents, two frozen
+ * trees are equal exactly when their arrays are.</p>
+ */
+final class FrozenNodeTree {
+    private static final int NO_NODE = -1;
+    private static final String[] NO_SEGMENTS = new String[0];
+    private static final Comparator<String> SEGMENT_ORDER = Comparator.comparingInt(String::hashCode).thenComparing(Comparator.naturalOrder());
+    private static final FrozenNodeTree EMPTY = new FrozenNodeTree(new int[1], new int[1], new String[1], new int[] {1, 1});
+
+    private final int[] values;
+    private final int[] hashes;
+    private final String[] names;
+    private final int[] childStart;
+    private final long[] summaries;
+    private final int[] index;
+    private final int hashCode;
+
+    private FrozenNodeTree(final int[] values, final int[] hashes, final String[] names, final int[] childStart) {
+        this.values = values;
+        this.hashes = hashes;
+        this.names = names;
+        this.childStart = childStart;
+        this.summaries = new long[values.length];
+        final int[] treeHashes = new int[values.length];
+        // children always come after their parent, so summarize bottom-up
+        for (int i = values.length - 1; i >= 0; i--) {
+            int maxPositive = 0;
+            int minNegative = 0;
+            int childrenHash = 0;
+            for (int child = childStart[i]; child < childStart[i + 1]; child++) {
+                maxPositive = Math.max(maxPositive, Math.max(values[child], NodeTree.maxPositive(this.summaries[child])));
+                minNegative = Math.min(minNegative, Math.min(values[child], NodeTree.minNegative(this.summaries[child])));
+                // same as a HashMap entry's hash, to match NodeTree.Node#hashCode()
+                childrenHash += hashes[child] ^ treeHashes[child];
+            }
+            this.summaries[i] = NodeTree.summary(maxPositive, minNegative);
+            treeHashes[i] = 31 * values[i] + childrenHash;
+        }
+        this.hashCode = treeHashes[0];
+
+        // the root is never a child, so 0 marks an empty slot
+        this.index = new int[Math.max(2, Integer.highestOneBit(values.length) << 2)];
+        final int mask = this.index.length - 1;
+        for (int parent = 0; parent < values.length; parent++) {
+            for (int child = childStart[parent]; child < childStart[parent + 1]; child++) {
+                int slot = slot(parent, hashes[child]) & mask;
+                while (this.index[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                this.index[slot] = child;
+            }
+        }
+    }
+
+    private static int slot(final int parent, final int hash) {
+        // segments often differ only in their last character, so mix well enough to break up runs
+        final int mixed = (hash + parent * 0x9E3779B9) * 0x85EBCA6B;
+        return mixed ^ (mixed >>> 15);
+    }
+
+    static FrozenNodeTree of(final NodeTree.Node root) {
+        return EMPTY.with(root);
+    }
+
+    static int count(final NodeTree.Node node) {
+        int count = 1;
+        for (final NodeTree.Node child : node.children.values()) {
+            count += count(child);
+        }
+        return count;
+    }
+
+    /**
+     * Create a copy of this tree with the values of another tree laid over it.
+     *
+     * <p>Every node present in {@code changes} replaces the value of the matching
+     * node in this tree, and its children are added to those already present.
+     * Nodes of this tree that are not in {@code changes} are copied unchanged.</p>
+     *
+     * @param changes the root of the tree of changes
+     * @return a new tree
+     */
+    FrozenNodeTree with(final NodeTree.Node changes) {
+        // the merged tree can be no larger than both trees together
+        final Packer packer = new Packer(this.values.length + FrozenNodeTree.count(changes));
+        packer.add(0, changes, 0, null);
+        for (int i = 0; i < packer.size; i++) {
+            final int source = packer.sources[i];
+            final NodeTree.@Nullable Node overlay = packer.overlays[i];
+            packer.values[i] = overlay != null ? overlay.value : this.values[source];
+            packer.childStart[i] = packer.size;
+
+            int existing = source == NO_NODE ? 0 : this.childStart[source];
+            final int existingEnd = source == NO_NODE ? 0 : this.childStart[source + 1];
+            final String[] added = overlay == null ? NO_SEGMENTS : sortedSegments(overlay);
+            int next = 0;
+            while (existing < existingEnd || next < added.length) {
+                final int order;
+                if (existing == existingEnd) {
+                    order = 1;
+                } else if (next == added.length) {
+                    order = -1;
+                } else {
+                    order = SEGMENT_ORDER.compare(this.names[existing], added[next]);
+                }
+
+                if (order < 0) {
+                    packer.add(existing, null, this.hashes[existing], this.names[existing]);
+                    existing++;
+                } else {
+                    final String segment = added[next++];
+                    packer.add(order == 0 ? existing++ : NO_NODE, overlay.children.get(segment), segment.hashCode(), segment);
+                }
+            }
+        }
+        return packer.build();
+    }
+
+    private static String[] sortedSegments(final NodeTree.Node node) {
+        if (node.children.isEmpty()) {
+            return NO_SEGMENTS;
+        }
+        final String[] segments = new String[node.children.size()];
+        int idx = 0;
+        for (final String segment : node.children.keySet()) {
+            segments[idx++] = NodeSegments.intern(segment);
+        }
+        Arrays.sort(segments, SEGMENT_ORDER);
+        return segments;
+    }
+
+    int size() {
+        return this.values.length;
+    }
+
+    private int child(final int node, final String segment) {
+        final int hash = segment.hashCode();
+        final int start = this.childStart[node];
+        final int end = this.childStart[node + 1];
+        final int mask = this.index.length - 1;
+        int child;
+        for (int slot = slot(node, hash) & mask; (child = this.index[slot]) != 0; slot = (slot + 1) & mask) {
+            if (child >= start && child < end && this.hashes[child] == hash && this.names[child].equals(segment)) {
+                return child;
+            }
+        }
+        return NO_NODE;
+    }
+
+    private int child(final int node, final String input, final int start, final int length, final int hash) {
+        final int first = this.childStart[node];
+        final int end = this.childStart[node + 1];
+        final int mask = this.index.length - 1;
+        int child;
+        for (int slot = slot(node, hash) & mask; (child = this.index[slot]) != 0; slot = (slot + 1) & mask) {
+            if (child >= first && child < end && this.hashes[child] == hash && NodeTree.regionEquals(this.names[child], input, start, length)) {
+                return child;
+            }
+        }
+        return NO_NODE;
+    }
+
+    int get(final String node) {
+        final int length = node.length();
+        int current = 0;
+        int lastUndefinedVal = this.values[0];
+        int start = 0;
+        while (true) {
+            final long segment = NodeTree.scanSegment(node, start);
+            if (segment == NodeTree.NON_ASCII) {
+                return this.getSplitting(node);
+            }
+            final int end = (int) segment;
+
+            final int child = this.child(current, node, start, end - start, (int) (segment >>> 32));
+            if (child == NO_NODE) {
+                break;
+            }
+            current = child;
+            if (Math.abs(this.values[current]) >= Math.abs(lastUndefinedVal)) {
+                lastUndefinedVal = this.values[current];
+            }
+
+            if (end == length) {
+                break;
+            }
+            start = end + 1;
+        }
+        return lastUndefinedVal;
+    }
+
+    /**
+     * Find a child by a pooled segment.
+     *
+     * <p>Every segment of a frozen tree comes from {@link NodeSegments}, so a
+     * pooled segment matches a child only if it is the very same instance.</p>
+     *
+     * @param node the parent node
+     * @param segment the pooled segment
+     * @return the child, or {@link #NO_NODE}
+     */
+    private int pooledChild(final int node, final String segment) {
+        final int start = this.childStart[node];
+        final int end = this.childStart[node + 1];
+        final int mask = this.index.length - 1;
+        int child;
+        for (int slot = slot(node, segment.hashCode()) & mask; (child = this.index[slot]) != 0; slot = (slot + 1) & mask) {
+            if (this.names[child] == segment && child >= start && child < end) {
+                return child;
+            }
+        }
+        return NO_NODE;
+    }
+
+    int get(final PermissionKey key) {
+        int current = 0;
+        int lastUndefinedVal = this.values[0];
+        for (final String segment : key.segments) {
+            final int child = this.pooledChild(current, segment);
+            if (child == NO_NODE) {
+                break;
+            }
+            current = child;
+            if (Math.abs(this.values[current]) >= Math.abs(lastUndefinedVal)) {
+                lastUndefinedVal = this.values[current];
+            }
+        }
+        return lastUndefinedVal;
+    }
+
+    int getSplitting(final String node) {
+        return this.get(NodeTree.splitPerm(node));
+    }
+
+    private int get(final String[] segments) {
+        int current = 0;
+        int lastUndefinedVal = this.values[0];
+        for (final String segment : segments) {
+            final int child = this.child(current, segment);
+            if (child == NO_NODE) {
+                break;
+            }
+            current = child;
+            if (Math.abs(this.values[current]) >= Math.abs(lastUndefinedVal)) {
+                lastUndefinedVal = this.values[current];
+            }
+        }
+        return lastUndefinedVal;
+    }
+
+    boolean anyInPrefixMatching(final String prefix, final IntPredicate test) {
+        final int length = prefix.length();
+        int current = 0;
+        int lastUndefinedVal = this.values[0];
+        int start = 0;
+
+        // Resolve prefix in place
+        while (true) {
+            final long segment = NodeTree.scanSegment(prefix, start);
+            if (segment == NodeTree.NON_ASCII) {
+                return this.anyInPrefixMatchingSplitting(prefix, test);
+            }
+            final int end = (int) segment;
+
+            final int child = this.child(current, prefix, start, end - start, (int) (segment >>> 32));
+            if (child == NO_NODE) {
+                return test.test(lastUndefinedVal);
+            }
+            current = child;
+            if (Math.abs(this.values[current]) >= Math.abs(lastUndefinedVal)) {
+                lastUndefinedVal = this.values[current];
+            }
+
+            if (end == length) {
+                break;
+            }
+            start = end + 1;
+        }
+        return this.anyBeneath(current, lastUndefinedVal, test);
+    }
+
+    private boolean anyInPrefixMatchingSplitting(final String prefix, final IntPredicate test) {
+        int current = 0;
+        int lastUndefinedVal = this.values[0];
+        for (final String part : NodeTree.splitPerm(prefix)) {
+            final int child = this.child(current, part);
+            if (child == NO_NODE) {
+                return test.test(lastUndefinedVal);
+            }
+            current = child;
+            if (Math.abs(this.values[current]) >= Math.abs(lastUndefinedVal)) {
+                lastUndefinedVal = this.values[current];
+            }
+        }
+        return this.anyBeneath(current, lastUndefinedVal, test);
+    }
+
+    private boolean anyBeneath(final int node, final int lastUndefinedVal, final IntPredicate test) {
+        int start = this.childStart[node];
+        int end = this.childStart[node + 1];
+        // If there are no children overridden, test on the prefix
+        if (start == end) {
+            return test.test(lastUndefinedVal);
+        }
+
+        if (test == NodeTree.GRANTED || test == NodeTree.DENIED) {
+            return NodeTree.summaryMatches(test, this.summaries[node], lastUndefinedVal);
+        }
+
+        // Visit descendants level by level, stopping on first match
+        while (start < end) {
+            for (int i = start; i < end; i++) {
+                if (Math.abs(this.values[i]) >= Math.abs(lastUndefinedVal) && test.test(this.values[i])) {
+                    return true;
+                }
+            }
+            start = this.childStart[start];
+            end = this.childStart[end];
+        }
+        return false;
+    }
+
+    int rootValue() {
+        return this.values[0];
+    }
+
+    void populateMap(final Map<String, Integer> values) {
+        for (int child = this.childStart[0]; child < this.childStart[1]; child++) {
+            this.populateMap(values, this.names[child], child);
+        }
+    }
+
+    private void populateMap(final Map<String, Integer> values, final String prefix, final int node) {
+        if (this.values[node] != 0) {
+            values.put(prefix, this.values[node]);
+        }
+        for (int child = this.childStart[node]; child < this.childStart[node + 1]; child++) {
+            this.populateMap(values, prefix + '.' + this.names[child], child);
+        }
+    }
+
+    @Override
+    public boolean equals(final @Nullable Object other) {
+        if (this == other) return true;
+        if (!(other instanceof FrozenNodeTree)) return false;
+
+        final FrozenNodeTree that = (FrozenNodeTree) other;
+        return this.hashCode == that.hashCode
+            && Arrays.equals(this.values, that.values)
+            && Arrays.equals(this.hashes, that.hashes)
+            && Arrays.equals(this.childStart, that.childStart)
+            && Arrays.equals(this.names, that.names);
+    }
+
+    /**
+     * Test whether this tree has the same nodes and values as a tree that is not frozen.
+     *
+     * @param root the root of the other tree
+     * @return whether the trees are equal
+     */
+    boolean matches(final NodeTree.Node root) {
+        return this.matches(0, root);
+    }
+
+    private boolean matches(final int node, final NodeTree.Node other) {
+        if (this.values[node] != other.value || this.childStart[node + 1] - this.childStart[node] != other.children.size()) {
+            return false;
+        }
+        for (int child = this.childStart[node]; child < this.childStart[node + 1]; child++) {
+            final NodeTree.@Nullable Node otherChild = other.children.get(this.names[child]);
+            if (otherChild == null || !this.matches(child, otherChild)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    /**
+     * Describe this tree in the same form as {@link NodeTree.Node#toString()}.
+     *
+     * @return a description of the tree
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        this.describe(builder, 0);
+        return builder.toString();
+    }
+
+    private void describe(final StringBuilder builder, final int node) {
+        builder.append("<value: ").append(this.values[node]).append(", children={");
+        for (int child = this.childStart[node]; child < this.childStart[node + 1]; child++) {
+            if (child != this.childStart[node]) {
+                builder.append(", ");
+            }
+            builder.append(this.names[child]).append('=');
+            this.describe(builder, child);
+        }
+        builder.append("}>");
+    }
+
+    /**
+     * Collect the nodes changed between this tree and {@code other}.
+     *
+     * <p>Children in both trees are sorted in the same order, so each level is
+     * compared with a single merge.</p>
+     *
+     * @param other the newer tree
+     * @param changes the map to add changed nodes to
+     * @see NodeTree#diff(NodeTree)
+     */
+    void diff(final FrozenNodeTree other, final Map<String, Integer> changes) {
+        this.diffChildren(other, changes, null, 0, 0);
+    }
+
+    private void diffChildren(final FrozenNodeTree other, final Map<String, Integer> changes, final @Nullable String prefix, final int previous, final int current) {
+        int i = previous == NO_NODE ? 0 : this.childStart[previous];
+        final int iEnd = previous == NO_NODE ? 0 : this.childStart[previous + 1];
+        int j = current == NO_NODE ? 0 : other.childStart[current];
+        final int jEnd = current == NO_NODE ? 0 : other.childStart[current + 1];
+        while (i < iEnd || j < jEnd) {
+            final int order;
+            if (i == iEnd) {
+                order = 1;
+            } else if (j == jEnd) {
+                order = -1;
+            } else {
+                order = SEGMENT_ORDER.compare(this.names[i], other.names[j]);
+            }
+
+            if (order == 0) {
+                this.diffNode(other, changes, prefix, this.names[i], i++, j++);
+            } else if (order < 0) {
+                this.diffNode(other, changes, prefix, this.names[i], i++, NO_NODE);
+            } else {
+                this.diffNode(other, changes, prefix, other.names[j], NO_NODE, j++);
+            }
+        }
+    }
+
+    private void diffNode(final FrozenNodeTree other, final Map<String, Integer> changes, final @Nullable String prefix, final String segment, final int previous, final int current) {
+        final String path = prefix == null ? segment : prefix + '.' + segment;
+        final int currentValue = current == NO_NODE ? NodeTree.PERMISSION_UNDEFINED : other.values[current];
+        if ((previous == NO_NODE ? NodeTree.PERMISSION_UNDEFINED : this.values[previous]) != currentValue) {
+            changes.put(path, currentValue);
+        }
+        this.diffChildren(other, changes, path, previous, current);
+    }
+
+    /**
+     * Collect the nodes changed between this tree and a tree that is not frozen.
+     *
+     * @param other the root of the other tree
+     * @param thisIsPrevious whether this tree is the older of the two
+     * @param changes the map to add changed nodes to
+     * @see NodeTree#diff(NodeTree)
+     */
+    void diff(final NodeTree.Node other, final boolean thisIsPrevious, final Map<String, Integer> changes) {
+        this.diffChildren(other, thisIsPrevious, changes, null, 0);
+    }
+
+    private void diffChildren(final NodeTree.@Nullable Node other, final boolean thisIsPrevious, final Map<String, Integer> changes, final @Nullable String prefix, final int node) {
+        if (node != NO_NODE) {
+            for (int child = this.childStart[node]; child < this.childStart[node + 1]; child++) {
+                final NodeTree.@Nullable Node otherChild = other == null ? null : other.children.get(this.names[child]);
+                this.diffNode(otherChild, thisIsPrevious, changes, prefix, this.names[child], child);
+            }
+        }
+        if (other != null) {
+            for (final Map.Entry<String, NodeTree.Node> ent : other.children.entrySet()) {
+                if (node == NO_NODE || this.child(node, ent.getKey()) == NO_NODE) {
+                    this.diffNode(ent.getValue(), thisIsPrevious, changes, prefix, ent.getKey(), NO_NODE);
+                }
+            }
+        }
+    }
+
+    private void diffNode(final NodeTree.@Nullable Node other, final boolean thisIsPrevious, final Map<String, Integer> changes, final @Nullable String prefix, final String segment, final int node) {
+        final String path = prefix == null ? segment : prefix + '.' + segment;
+        final int value = node == NO_NODE ? NodeTree.PERMISSION_UNDEFINED : this.values[node];
+        final int otherValue = other == null ? NodeTree.PERMISSION_UNDEFINED : other.value;
+        if (value != otherValue) {
+            changes.put(path, thisIsPrevious ? otherValue : value);
+        }
+        this.diffChildren(other, thisIsPrevious, changes, path, node);
+    }
+
+    /**
+     * Accumulates the arrays of a new tree in breadth-first order.
+     */
+    private static final class Packer {
+        final int[] sources;
+        final NodeTree.@Nullable Node[] overlays;
+        final int[] values;
+        final int[] hashes;
+        final String[] names;
+        final int[] childStart;
+        int size;
+
+        /**
+         * Create a packer for a tree of at most {@code capacity} nodes.
+         *
+         * @param capacity the maximum number of nodes
+         */
+        Packer(final int capacity) {
+            this.sources = new int[capacity];
+            this.overlays = new NodeTree.Node[capacity];
+            this.values = new int[capacity];
+            this.hashes = new int[capacity];
+            this.names = new String[capacity];
+            this.childStart = new int[capacity + 1];
+        }
+
+        void add(final int source, final NodeTree.@Nullable Node overlay, final int hash, final @Nullable String name) {
+            this.sources[this.size] = source;
+            this.overlays[this.size] = overlay;
+            this.hashes[this.size] = hash;
+            this.names[this.size] = name;
+            this.size++;
+        }
+
+        FrozenNodeTree build() {
+            final int size = this.size;
+            final int[] childStart = Arrays.copyOf(this.childStart, size + 1);
+            childStart[size] = size;
+            return new FrozenNodeTree(Arrays.copyOf(this.values, size), Arrays.copyOf(this.hashes, size), Arrays.copyOf(this.names, size), childStart);
+        }
+    }
+}
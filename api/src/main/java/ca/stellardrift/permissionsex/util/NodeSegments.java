@@ -0,0 +1,94 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.util;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An engine-wide pool of lowercased node segments, so that frozen trees share
+ * a single instance of each segment.
+ *
+ * <p>Segments are only weakly held, so a segment is released once no tree or
+ * key uses it any more.</p>
+ */
+final class NodeSegments {
+    private static final Map<PoolEntry, PoolEntry> POOL = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<String> COLLECTED = new ReferenceQueue<>();
+
+    private NodeSegments() {
+    }
+
+    /**
+     * Get the pooled instance of a lowercased segment.
+     *
+     * @param segment the segment
+     * @return a segment equal to {@code segment}
+     */
+    static String intern(final String segment) {
+        @Nullable Reference<? extends String> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            POOL.remove(collected, collected);
+        }
+
+        final PoolEntry entry = new PoolEntry(segment);
+        while (true) {
+            final @Nullable PoolEntry existing = POOL.putIfAbsent(entry, entry);
+            if (existing == null) {
+                return segment;
+            }
+            final @Nullable String existingSegment = existing.get();
+            if (existingSegment != null) {
+                return existingSegment;
+            }
+            POOL.remove(existing, existing); // collected since it was found
+        }
+    }
+
+    /**
+     * A weakly held segment in the pool, equal to any entry for an equal segment.
+     */
+    private static final class PoolEntry extends WeakReference<String> {
+        private final int hashCode;
+
+        PoolEntry(final String segment) {
+            super(segment, COLLECTED);
+            this.hashCode = segment.hashCode();
+        }
+
+        @Override
+        public boolean equals(final @Nullable Object other) {
+            if (this == other) {
+                return true;
+            } else if (!(other instanceof PoolEntry) || this.hashCode != other.hashCode()) {
+                return false;
+            }
+            final @Nullable String segment = this.get();
+            return segment != null && segment.equals(((PoolEntry) other).get());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+}
@@ -21,8 +21,10 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.IntPredicate;
 import java.util.regex.Pattern;
 
@@ -42,16 +44,46 @@ import static java.util.Objects.requireNonNull;
 public final class NodeTree {
     public static final int PERMISSION_UNDEFINED = 0;
 
+    /**
+     * A predicate matching granted (positive) permission values.
+     *
+     * <p>When passed to {@link #anyInPrefixMatching(String, IntPredicate)}, this
+     * predicate is answered from precomputed subtree data rather than a full walk.</p>
+     *
+     * @since 2.0.0
+     */
+    public static final IntPredicate GRANTED = value -> value > 0;
+
+    /**
+     * A predicate matching denied (negative) permission values.
+     *
+     * <p>When passed to {@link #anyInPrefixMatching(String, IntPredicate)}, this
+     * predicate is answered from precomputed subtree data rather than a full walk.</p>
+     *
+     * @since 2.0.0
+     */
+    public static final IntPredicate DENIED = value -> value < 0;
+
     private static final Pattern SPLIT_REGEX = Pattern.compile("\\.");
-    private final Node rootNode;
+    static final long NON_ASCII = -1L;
+
+    private final @Nullable Node rootNode;
+    private final @Nullable FrozenNodeTree frozen;
+    private int hashCode;
 
     private NodeTree(int value) {
-        this.rootNode = new Node(new HashMap<>());
-        this.rootNode.value = value;
+        this(new Node(new HashMap<>()));
+        this.root().value = value;
     }
 
     private NodeTree(Node rootNode) {
         this.rootNode = rootNode;
+        this.frozen = null;
+    }
+
+    private NodeTree(final FrozenNodeTree frozen) {
+        this.rootNode = null;
+        this.frozen = frozen;
     }
 
     /**
@@ -77,7 +109,7 @@ public final class NodeTree {
         final NodeTree newTree = new NodeTree(defaultValue);
         for (Map.Entry<String, Integer> value : values.entrySet()) {
             final String[] parts = splitPerm(value.getKey());
-            Node currentNode = newTree.rootNode;
+            Node currentNode = newTree.root();
             for (String part : parts) {
                 if (currentNode.children.containsKey(part)) {
                     currentNode = currentNode.children.get(part);
@@ -92,17 +124,114 @@ public final class NodeTree {
         return newTree;
     }
 
+    /**
+     * Get a read-only, compact copy of this tree.
+     *
+     * <p>A frozen tree is packed into flat arrays rather than one map per node,
+     * making it far smaller, while lookups take about as long. This is intended for data that
+     * will not change once calculated, such as baked subject data. Modifying a
+     * frozen tree is possible, and produces another frozen tree with the changes
+     * merged into a new copy of its arrays.</p>
+     *
+     * @return a frozen tree with the same values, or this tree if it is already frozen
+     * @since 2.0.0
+     */
+    public NodeTree freeze() {
+        if (this.frozen != null) {
+            return this;
+        }
+        return new NodeTree(FrozenNodeTree.of(this.root()));
+    }
+
     /**
      * Returns the value assigned to a specific node, or the nearest parent value in the tree if the node itself is undefined.
      *
+     * <p>The node is scanned in place, so no intermediate strings are created
+     * for plain (ASCII) nodes.</p>
+     *
      * @param node The path to get the node value at
      * @return The int value for the given node
      * @since 2.0.0
      */
     public int get(final String node) {
+        requireNonNull(node, "node");
+        if (this.frozen != null) {
+            return this.frozen.get(node);
+        }
+
+        final int length = node.length();
+        Node currentNode = this.root();
+        int lastUndefinedVal = currentNode.value;
+        int start = 0;
+        while (true) {
+            final long segment = scanSegment(node, start);
+            if (segment == NON_ASCII) {
+                return this.getSplitting(node);
+            }
+            final int end = (int) segment;
+
+            final @Nullable Node child = currentNode.child(node, start, end - start, (int) (segment >>> 32));
+            if (child == null) {
+                break;
+            }
+            currentNode = child;
+            if (Math.abs(currentNode.value) >= Math.abs(lastUndefinedVal)) {
+                lastUndefinedVal = currentNode.value;
+            }
+
+            if (end == length) {
+                break;
+            }
+            start = end + 1;
+        }
+        return lastUndefinedVal;
+    }
+
+    /**
+     * Returns the value assigned to a pre-resolved permission, or the nearest parent value in the tree if the node itself is undefined.
+     *
+     * @param key the resolved permission to get the value of
+     * @return the int value for the given node
+     * @since 2.0.0
+     */
+    public int get(final PermissionKey key) {
+        requireNonNull(key, "key");
+        if (this.frozen != null) {
+            return this.frozen.get(key);
+        }
+
+        Node currentNode = this.root();
+        int lastUndefinedVal = currentNode.value;
+        for (final String part : key.segments) {
+            final @Nullable Node child = currentNode.children.get(part);
+            if (child == null) {
+                break;
+            }
+            currentNode = child;
+            if (Math.abs(currentNode.value) >= Math.abs(lastUndefinedVal)) {
+                lastUndefinedVal = currentNode.value;
+            }
+        }
+        return lastUndefinedVal;
+    }
+
+    /**
+     * Resolve a node by splitting it into lowercased segments.
+     *
+     * <p>This is the fallback for nodes containing non-ASCII characters, and the
+     * baseline for benchmarks of {@link #get(String)}.</p>
+     *
+     * @param node the path to get the node value at
+     * @return the int value for the given node
+     */
+    int getSplitting(final String node) {
+        if (this.frozen != null) {
+            return this.frozen.getSplitting(node);
+        }
+
         final String[] parts = splitPerm(node);
-        Node currentNode = this.rootNode;
-        int lastUndefinedVal = this.rootNode.value;
+        Node currentNode = this.root();
+        int lastUndefinedVal = currentNode.value;
         for (final String part : parts) {
             if (!currentNode.children.containsKey(part)) {
                 break;
@@ -118,14 +247,21 @@ public final class NodeTree {
     /**
      * Return whether the node {@code prefix} or any of its children match the predicate {@code test}.
      *
+     * <p>Tests with {@link #GRANTED} or {@link #DENIED} only need to resolve the
+     * prefix. Any other predicate is tested against every node beneath the prefix.</p>
+     *
      * @param prefix the prefix to test
      * @param test the test function
      * @return if any values return true
      */
     public boolean anyInPrefixMatching(final String prefix, final IntPredicate test) {
+        if (this.frozen != null) {
+            return this.frozen.anyInPrefixMatching(prefix, test);
+        }
+
         final String[] parts = splitPerm(prefix);
-        Node currentNode = this.rootNode;
-        int lastUndefinedVal = this.rootNode.value;
+        Node currentNode = this.root();
+        int lastUndefinedVal = currentNode.value;
 
         // Resolve prefix
         for (final String part : parts) {
@@ -143,6 +279,10 @@ public final class NodeTree {
             return test.test(lastUndefinedVal);
         }
 
+        if (test == GRANTED || test == DENIED) {
+            return summaryMatches(test, currentNode.summary(), lastUndefinedVal);
+        }
+
         // Now visit all children, stopping on first match
         // search breadth-first
         final ArrayDeque<Node> toVisit = new ArrayDeque<>(currentNode.children.size() * 2);
@@ -160,6 +300,16 @@ public final class NodeTree {
         return false;
     }
 
+    /**
+     * Get the number of nodes in this tree, including the root and any nodes without a value.
+     *
+     * @return the node count
+     * @since 2.0.0
+     */
+    public int size() {
+        return this.frozen != null ? this.frozen.size() : FrozenNodeTree.count(this.root());
+    }
+
     /**
      * Convert this node tree into a map of the defined nodes in this tree.
      *
@@ -168,8 +318,12 @@ public final class NodeTree {
      */
     public Map<String, Integer> asMap() {
         final Map<String, Integer> ret = new HashMap<>();
-        for (final Map.Entry<String, Node> ent : this.rootNode.children.entrySet()) {
-            populateMap(ret, ent.getKey(), ent.getValue());
+        if (this.frozen != null) {
+            this.frozen.populateMap(ret);
+        } else {
+            for (final Map.Entry<String, Node> ent : this.root().children.entrySet()) {
+                populateMap(ret, ent.getKey(), ent.getValue());
+            }
         }
         return Collections.unmodifiableMap(ret);
     }
@@ -183,6 +337,71 @@ public final class NodeTree {
         }
     }
 
+    /**
+     * Find the nodes whose values differ between this tree and {@code other}.
+     *
+     * <p>Both trees are walked together, and only the changed nodes are visited
+     * beyond the paths they share, so this is cheaper than comparing the results
+     * of {@link #asMap()}.</p>
+     *
+     * <p>Only nodes whose own value changed are included, so the result is not a
+     * patch for this tree: {@link #withAll(Map)} resets any defined node it passes
+     * through on the way to a changed node. Diffing {@code {a=1, a.b=1}} against
+     * {@code {a=1, a.b=2}} gives {@code {a.b=2}}, and applying that leaves
+     * {@code a} undefined.</p>
+     *
+     * <p>The fallback value of the tree's root is not a node, so a change to it is
+     * not included.</p>
+     *
+     * @param other the tree to compare to
+     * @return a map of changed nodes to their value in {@code other}, where
+     *     {@link #PERMISSION_UNDEFINED} marks a removed node
+     * @since 2.0.0
+     */
+    public Map<String, Integer> diff(final NodeTree other) {
+        requireNonNull(other, "other");
+        if (this == other) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, Integer> ret = new HashMap<>();
+        if (this.frozen != null && other.frozen != null) {
+            this.frozen.diff(other.frozen, ret);
+        } else if (this.frozen != null) {
+            this.frozen.diff(other.root(), true, ret);
+        } else if (other.frozen != null) {
+            other.frozen.diff(this.root(), false, ret);
+        } else {
+            diffChildren(ret, null, this.root(), other.root());
+        }
+        return Collections.unmodifiableMap(ret);
+    }
+
+    private static void diffChildren(final Map<String, Integer> changes, final @Nullable String prefix, final @Nullable Node previous, final @Nullable Node current) {
+        if (previous == current) { // unchanged, or shared between trees by a builder
+            return;
+        }
+        final Map<String, Node> previousChildren = previous == null ? Node.EMPTY : previous.children;
+        final Map<String, Node> currentChildren = current == null ? Node.EMPTY : current.children;
+        for (final Map.Entry<String, Node> ent : previousChildren.entrySet()) {
+            diffNode(changes, prefix, ent.getKey(), ent.getValue(), currentChildren.get(ent.getKey()));
+        }
+        for (final Map.Entry<String, Node> ent : currentChildren.entrySet()) {
+            if (!previousChildren.containsKey(ent.getKey())) {
+                diffNode(changes, prefix, ent.getKey(), null, ent.getValue());
+            }
+        }
+    }
+
+    private static void diffNode(final Map<String, Integer> changes, final @Nullable String prefix, final String segment, final @Nullable Node previous, final @Nullable Node current) {
+        final String path = prefix == null ? segment : prefix + '.' + segment;
+        final int currentValue = current == null ? PERMISSION_UNDEFINED : current.value;
+        if ((previous == null ? PERMISSION_UNDEFINED : previous.value) != currentValue) {
+            changes.put(path, currentValue);
+        }
+        diffChildren(changes, path, previous, current);
+    }
+
     /**
      * Return a new NodeTree instance with a single changed value.
      *
@@ -192,21 +411,7 @@ public final class NodeTree {
      * @since 2.0.0
      */
     public NodeTree withValue(final String node, final int value) {
-        final String[] parts = splitPerm(node);
-        final Node newRoot = new Node(new HashMap<>(this.rootNode.children));
-        Node newPtr = newRoot;
-        @Nullable Node currentPtr = this.rootNode;
-
-        newPtr.value = currentPtr.value;
-        for (final String part : parts) {
-            final @Nullable Node oldChild = currentPtr == null ? null : currentPtr.children.get(part);
-            final Node newChild = new Node(oldChild != null ? new HashMap<>(oldChild.children) : new HashMap<>());
-            newPtr.children.put(part, newChild);
-            currentPtr = oldChild;
-            newPtr = newChild;
-        }
-        newPtr.value = value;
-        return new NodeTree(newRoot);
+        return this.toBuilder().set(node, value).build();
     }
 
     /**
@@ -217,29 +422,276 @@ public final class NodeTree {
      * @since 2.0.0
      */
     public NodeTree withAll(Map<String, Integer> values) {
-        NodeTree ret = this;
-        for (Map.Entry<String, Integer> ent : values.entrySet()) {
-            ret = ret.withValue(ent.getKey(), ent.getValue());
+        return this.toBuilder().setAll(values).build();
+    }
+
+    /**
+     * Create a builder to apply several changes to a copy of this tree.
+     *
+     * <p>Each node touched by the builder will only be copied once, no matter
+     * how many changes are made beneath it. The changes to a frozen tree are
+     * collected separately, and merged into a new frozen tree when it is built.</p>
+     *
+     * @return a new builder
+     * @since 2.0.0
+     */
+    public Builder toBuilder() {
+        return this.frozen != null ? new Builder(this.frozen) : new Builder(this.root());
+    }
+
+    /**
+     * Node trees are equal when they contain the same nodes with the same values,
+     * whether or not either tree is {@link #freeze() frozen}.
+     *
+     * @param other the object to compare to
+     * @return whether the two trees have the same structure
+     */
+    @Override
+    public boolean equals(final @Nullable Object other) {
+        if (this == other) return true;
+        if (!(other instanceof NodeTree)) return false;
+
+        final NodeTree that = (NodeTree) other;
+        if (this.hashCode() != that.hashCode()) return false;
+        if (this.frozen != null) {
+            return that.frozen != null ? this.frozen.equals(that.frozen) : this.frozen.matches(that.root());
+        } else if (that.frozen != null) {
+            return that.frozen.matches(this.root());
         }
-        return ret;
+        return this.root().equals(that.root());
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = this.hashCode;
+        if (hashCode == 0) {
+            this.hashCode = hashCode = this.frozen != null ? this.frozen.hashCode() : this.root().hashCode();
+        }
+        return hashCode;
     }
 
     @Override
     public String toString() {
-        return "NodeTree{" + this.rootNode + "}";
+        return "NodeTree{" + (this.frozen != null ? this.frozen : this.root()) + "}";
     }
 
-    private static String[] splitPerm(final String input) {
+    /**
+     * Get the root of a tree that is not frozen.
+     *
+     * @return the root node
+     */
+    private Node root() {
+        return requireNonNull(this.rootNode, "rootNode");
+    }
+
+    static String[] splitPerm(final String input) {
         requireNonNull(input, "input");
         return SPLIT_REGEX.split(input.toLowerCase(Locale.ROOT), -1);
     }
 
+    /**
+     * Scan a single segment of a node, starting at {@code start}.
+     *
+     * <p>Only ASCII characters can be lowercased without a lookup, so this
+     * will return {@link #NON_ASCII} if any other characters are encountered.</p>
+     *
+     * @param input the node
+     * @param start the index of the first character of the segment
+     * @return the {@link String#hashCode()} of the lowercased segment in the upper
+     *     32 bits, and the index of the end of the segment in the lower 32 bits
+     */
+    static long scanSegment(final String input, final int start) {
+        final int length = input.length();
+        int end = start;
+        int hash = 0;
+        for (; end < length; end++) {
+            char c = input.charAt(end);
+            if (c == '.') {
+                break;
+            } else if (c >= 0x80) {
+                return NON_ASCII;
+            } else if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            hash = 31 * hash + c;
+        }
+        return ((long) hash << 32) | end;
+    }
+
+    /**
+     * Pack the extreme values found beneath a node.
+     *
+     * @param maxPositive the greatest positive value, or zero
+     * @param minNegative the least negative value, or zero
+     * @return a summary of the subtree
+     */
+    static long summary(final int maxPositive, final int minNegative) {
+        return ((long) maxPositive << 32) | (minNegative & 0xFFFFFFFFL);
+    }
+
+    static int maxPositive(final long summary) {
+        return (int) (summary >>> 32);
+    }
+
+    static int minNegative(final long summary) {
+        return (int) summary;
+    }
+
+    /**
+     * Answer a {@link #GRANTED} or {@link #DENIED} test from a subtree summary, with
+     * the same result as testing every node beneath the prefix.
+     *
+     * @param test the predicate, either {@link #GRANTED} or {@link #DENIED}
+     * @param summary the summary of the nodes beneath the prefix
+     * @param lastUndefinedVal the value resolved for the prefix
+     * @return whether any node beneath the prefix matches
+     */
+    static boolean summaryMatches(final IntPredicate test, final long summary, final int lastUndefinedVal) {
+        final int extreme = test == GRANTED ? maxPositive(summary) : minNegative(summary);
+        return extreme != 0 && Math.abs(extreme) >= Math.abs(lastUndefinedVal);
+    }
+
+    static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Test whether {@code key} is equal to a region of {@code input}, lowercasing ASCII characters.
+     *
+     * @param key the lowercased key
+     * @param input the source string
+     * @param start the start of the region
+     * @param length the length of the region
+     * @return whether the region matches
+     */
+    static boolean regionEquals(final String key, final String input, final int start, final int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(start + i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (key.charAt(i) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A builder applying a batch of changes to a node tree.
+     *
+     * <p>Nodes copied by a builder are modified in place until {@link #build()} is
+     * called, after which any further changes will copy nodes again.</p>
+     *
+     * @since 2.0.0
+     */
+    public static final class Builder {
+        private final @Nullable FrozenNodeTree base;
+        private Node root;
+        private final Set<Node> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Builder(final Node root) {
+            this.base = null;
+            this.root = this.copy(root);
+            this.root.value = root.value;
+        }
+
+        /**
+         * Create a builder collecting changes to a frozen tree.
+         *
+         * <p>The builder's nodes only hold the paths that have been changed,
+         * and are laid over {@code base} when the tree is built.</p>
+         *
+         * @param base the tree to change
+         */
+        Builder(final FrozenNodeTree base) {
+            this.base = base;
+            this.root = this.copy(null);
+            this.root.value = base.rootValue();
+        }
+
+        /**
+         * Set the value of a single node.
+         *
+         * <p>As with {@link NodeTree#withValue(String, int)}, nodes between the root and
+         * {@code node} are reset to an undefined value the first time they are
+         * copied by this builder.</p>
+         *
+         * @param node the node path to change the value of
+         * @param value the value to change, or UNDEFINED to remove
+         * @return this builder
+         * @since 2.0.0
+         */
+        public Builder set(final String node, final int value) {
+            final String[] parts = splitPerm(node);
+            if (!this.owned.contains(this.root)) {
+                final Node oldRoot = this.root;
+                this.root = this.copy(oldRoot);
+                this.root.value = oldRoot.value;
+            }
+
+            Node current = this.root;
+            for (final String part : parts) {
+                final @Nullable Node child = current.children.get(part);
+                final Node newChild;
+                if (child != null && this.owned.contains(child)) {
+                    newChild = child;
+                } else {
+                    newChild = child == null ? this.copy(null) : this.copy(child);
+                    current.children.put(part, newChild);
+                }
+                current = newChild;
+            }
+            current.value = value;
+            return this;
+        }
+
+        /**
+         * Set the values of every node in {@code values}.
+         *
+         * @param values the values to set
+         * @return this builder
+         * @since 2.0.0
+         */
+        public Builder setAll(final Map<String, Integer> values) {
+            for (final Map.Entry<String, Integer> ent : values.entrySet()) {
+                this.set(ent.getKey(), ent.getValue());
+            }
+            return this;
+        }
+
+        /**
+         * Create a node tree with the changes made so far.
+         *
+         * @return the new tree
+         * @since 2.0.0
+         */
+        public NodeTree build() {
+            this.owned.clear();
+            return this.base == null ? new NodeTree(this.root) : new NodeTree(this.base.with(this.root));
+        }
+
+        private Node copy(final @Nullable Node original) {
+            final Node ret = new Node(original == null ? new HashMap<>() : new HashMap<>(original.children));
+            this.owned.add(ret);
+            return ret;
+        }
+    }
+
     static class Node {
 
         private static final Map<String, Node> EMPTY = Collections.emptyMap();
 
+        private static final long UNSUMMARIZED = Long.MIN_VALUE;
+
         Map<String, Node> children;
         int value = 0;
+        private @Nullable ChildIndex index;
+        private volatile long summary = UNSUMMARIZED;
+        private volatile int hashCode;
 
         Node(Map<String, Node> children) {
             this.children = children;
@@ -256,9 +708,129 @@ public final class NodeTree {
             this.children.put(path, child);
         }
 
+        /**
+         * Find the child whose key is equal to a lowercased region of {@code input}.
+         *
+         * <p>The index is only built once the node is no longer being modified, so a
+         * racy initialization will at worst build an identical index twice.</p>
+         *
+         * @param input the source string, containing only ASCII characters in the region
+         * @param start the start of the region
+         * @param length the length of the region
+         * @param hash the {@link String#hashCode()} of the lowercased region
+         * @return the child node, if any
+         */
+        @Nullable Node child(final String input, final int start, final int length, final int hash) {
+            @Nullable ChildIndex index = this.index;
+            if (index == null) {
+                this.index = index = ChildIndex.of(this.children);
+            }
+            return index.get(input, start, length, hash);
+        }
+
+        /**
+         * Get the extreme values of every node beneath this one.
+         *
+         * <p>As with the child index, this is computed once the node is no
+         * longer being modified.</p>
+         *
+         * @return the subtree summary
+         * @see #summary(int, int)
+         */
+        long summary() {
+            long summary = this.summary;
+            if (summary == UNSUMMARIZED) {
+                int maxPositive = 0;
+                int minNegative = 0;
+                for (final Node child : this.children.values()) {
+                    final long childSummary = child.summary();
+                    maxPositive = Math.max(maxPositive, Math.max(child.value, maxPositive(childSummary)));
+                    minNegative = Math.min(minNegative, Math.min(child.value, minNegative(childSummary)));
+                }
+                this.summary = summary = NodeTree.summary(maxPositive, minNegative);
+            }
+            return summary;
+        }
+
+        @Override
+        public boolean equals(final @Nullable Object other) {
+            if (this == other) return true;
+            if (!(other instanceof Node)) return false;
+
+            final Node that = (Node) other;
+            return this.value == that.value && this.children.equals(that.children);
+        }
+
+        /**
+         * Hash this node and its children.
+         *
+         * <p>{@link FrozenNodeTree} must produce the same hash code for equal trees.
+         * Like the summary, the hash is computed once the node is no longer being
+         * modified, so each subtree is only hashed once.</p>
+         *
+         * @return the hash code
+         */
+        @Override
+        public int hashCode() {
+            int hashCode = this.hashCode;
+            if (hashCode == 0) {
+                this.hashCode = hashCode = 31 * this.value + this.children.hashCode();
+            }
+            return hashCode;
+        }
+
         @Override
         public String toString() {
             return "<value: " + this.value + ", children=" + this.children + ">";
         }
     }
+
+    /**
+     * An open-addressed table of a node's children, able to look up keys by a
+     * region of a larger string.
+     */
+    static final class ChildIndex {
+        private static final ChildIndex EMPTY = new ChildIndex(new String[1], new Node[1]);
+
+        private final String[] keys;
+        private final Node[] nodes;
+        private final int mask;
+
+        static ChildIndex of(final Map<String, Node> children) {
+            if (children.isEmpty()) {
+                return EMPTY;
+            }
+            int capacity = Integer.highestOneBit(children.size()) << 2;
+            final String[] keys = new String[capacity];
+            final Node[] nodes = new Node[capacity];
+            final int mask = capacity - 1;
+            for (final Map.Entry<String, Node> child : children.entrySet()) {
+                int slot = spread(child.getKey().hashCode()) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = child.getKey();
+                nodes[slot] = child.getValue();
+            }
+            return new ChildIndex(keys, nodes);
+        }
+
+        private ChildIndex(final String[] keys, final Node[] nodes) {
+            this.keys = keys;
+            this.nodes = nodes;
+            this.mask = keys.length - 1;
+        }
+
+        @Nullable Node get(final String input, final int start, final int length, final int hash) {
+            int slot = spread(hash) & this.mask;
+            @Nullable String key;
+            while ((key = this.keys[slot]) != null) {
+                if (key.hashCode() == hash && regionEquals(key, input, start, length)) {
+                    return this.nodes[slot];
+                }
+                slot = (slot + 1) & this.mask;
+            }
+            return null;
+        }
+    }
 }
@@ -0,0 +1,128 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.util;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A permission that has been split and resolved once, to be queried repeatedly.
+ *
+ * <p>Keys hold the lowercased segments of a permission, so they can be
+ * evaluated against any {@link NodeTree} without parsing the permission again.
+ * Segments come from the same pool frozen trees use, so a frozen tree matches
+ * them by reference rather than by comparing strings. A key does not depend on
+ * any particular tree, so it remains valid across rebakes of subject data.</p>
+ *
+ * <p>Like node trees, keys are case-insensitive. Permissions that differ only
+ * in case share one key, which reports the permission it was first created for.</p>
+ *
+ * <p>Keys are held in a registry for the lifetime of the application, and are
+ * intended for the fixed set of permissions a platform or plugin checks often.
+ * The registry is bounded, so once it is full any further permissions get a
+ * key of their own that is not shared. Such keys work the same way, but are
+ * released once the caller stops holding them.</p>
+ *
+ * @since 2.0.0
+ */
+public final class PermissionKey {
+    static final int MAX_REGISTERED = 8192;
+    private static final ConcurrentMap<String, PermissionKey> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String permission;
+    private final String lowercase;
+    final String[] segments;
+
+    /**
+     * Get the key for a permission, resolving it if it has not been seen before.
+     *
+     * @param permission the permission
+     * @return the key
+     * @since 2.0.0
+     */
+    public static PermissionKey of(final String permission) {
+        final String lowercase = requireNonNull(permission, "permission").toLowerCase(Locale.ROOT);
+        final @Nullable PermissionKey existing = REGISTRY.get(lowercase);
+        if (existing != null) {
+            return existing;
+        }
+        if (REGISTRY.size() >= MAX_REGISTERED) {
+            return new PermissionKey(permission, lowercase);
+        }
+        return REGISTRY.computeIfAbsent(lowercase, k -> new PermissionKey(permission, k));
+    }
+
+    /**
+     * Get a key for a permission without registering it.
+     *
+     * <p>This is meant for permissions that are only checked once, so they are not
+     * kept for the lifetime of the application. If the permission has already been
+     * registered, the registered key is returned.</p>
+     *
+     * @param permission the permission
+     * @return the key
+     * @since 2.0.0
+     */
+    public static PermissionKey unregistered(final String permission) {
+        final String lowercase = requireNonNull(permission, "permission").toLowerCase(Locale.ROOT);
+        final @Nullable PermissionKey existing = REGISTRY.get(lowercase);
+        return existing != null ? existing : new PermissionKey(permission, lowercase);
+    }
+
+    private PermissionKey(final String permission, final String lowercase) {
+        this.permission = permission;
+        this.lowercase = lowercase;
+        final String[] segments = NodeTree.splitPerm(lowercase);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = NodeSegments.intern(segments[i]);
+        }
+        this.segments = segments;
+    }
+
+    /**
+     * Get the permission this key was created from.
+     *
+     * @return the permission
+     * @since 2.0.0
+     */
+    public String permission() {
+        return this.permission;
+    }
+
+    @Override
+    public boolean equals(final @Nullable Object other) {
+        if (this == other) return true;
+        if (!(other instanceof PermissionKey)) return false;
+
+        return this.lowercase.equals(((PermissionKey) other).lowercase);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.lowercase.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.permission;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.context;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContextSetTest {
+    private static final ContextValue<?> NETHER = new ContextValue<>("world", "nether");
+    private static final ContextValue<?> END = new ContextValue<>("world", "end");
+    private static final ContextValue<?> TAG = new ContextValue<>("server-tag", "lobby");
+
+    @Test
+    void testInterned() {
+        final ContextSet first = ContextSet.of(new HashSet<>(Arrays.asList(NETHER, TAG)));
+        final ContextSet second = ContextSet.of(TAG, NETHER, TAG);
+        assertSame(first, second);
+        assertSame(first, ContextSet.of(first));
+        assertSame(ContextSet.empty(), ContextSet.of());
+    }
+
+    @Test
+    void testInternedConcurrently() throws InterruptedException {
+        final int threadCount = 4;
+        final ContextSet[][] results = new ContextSet[threadCount][500];
+        final Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final ContextSet[] result = results[i];
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < result.length; j++) {
+                    result[j] = ContextSet.of(new ContextValue<>("world", "concurrent-" + j), TAG);
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int j = 0; j < results[0].length; j++) {
+            for (int i = 1; i < threadCount; i++) {
+                assertSame(results[0][j], results[i][j]);
+            }
+        }
+    }
+
+    @Test
+    void testEqualToOtherSets() {
+        final Set<ContextValue<?>> hashed = new HashSet<>(Arrays.asList(NETHER, TAG));
+        final ContextSet contexts = ContextSet.of(hashed);
+        assertEquals(hashed, contexts);
+        assertEquals(contexts, hashed);
+        assertEquals(hashed.hashCode(), contexts.hashCode());
+        assertEquals(2, contexts.size());
+        assertTrue(contexts.contains(new ContextValue<>("world", "nether")));
+        assertFalse(contexts.contains(END));
+    }
+
+    @Test
+    void testModification() {
+        final ContextSet contexts = ContextSet.of(NETHER, TAG);
+        final ContextSet added = contexts.with(END);
+        assertEquals(3, added.size());
+        assertTrue(added.containsAll(contexts));
+        assertFalse(contexts.containsAll(added));
+        assertSame(contexts, added.without(END));
+        assertSame(ContextSet.empty(), contexts.without(NETHER).without(TAG));
+        assertThrows(UnsupportedOperationException.class, () -> contexts.add(END));
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class NodeSegmentsTest {
+
+    @Test
+    void testInternShared() {
+        final String first = NodeSegments.intern(new String("worldedit"));
+        assertSame(first, NodeSegments.intern(new String("worldedit")));
+    }
+
+    @Test
+    void testUnusedSegmentsReleased() throws InterruptedException {
+        final String value = "released." + System.nanoTime();
+        final WeakReference<String> first = new WeakReference<>(NodeSegments.intern(new String(value)));
+        for (int i = 0; i < 50 && first.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(first.get());
+
+        // the pool no longer holds the first instance, so a new one takes its place
+        final String second = new String(value);
+        assertSame(second, NodeSegments.intern(second));
+    }
+}
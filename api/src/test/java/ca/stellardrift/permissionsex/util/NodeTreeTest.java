@@ -18,6 +18,7 @@ package ca.stellardrift.permissionsex.util;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -98,6 +99,25 @@ public class NodeTreeTest {
         assertEquals(0, nodes.get("random.perm"));
     }
 
+    @Test
+    void testGetCaseInsensitive() {
+        final Map<String, Integer> testPermissions = new HashMap<>();
+        testPermissions.put("Generate.Rainbow", 1);
+        testPermissions.put("generate.sunset", -1);
+        testPermissions.put("gÉnérer.arc", 2);
+
+        final NodeTree nodes = NodeTree.of(testPermissions);
+
+        assertEquals(1, nodes.get("generate.rainbow"));
+        assertEquals(1, nodes.get("GENERATE.RAINBOW.double"));
+        assertEquals(-1, nodes.get("generate.Sunset"));
+        assertEquals(0, nodes.get("generate"));
+        assertEquals(0, nodes.get("generate."));
+        assertEquals(0, nodes.get(""));
+        assertEquals(2, nodes.get("GÉNÉRER.arc"));
+        assertEquals(nodes.getSplitting("generate.RAINBOW"), nodes.get("generate.RAINBOW"));
+    }
+
     @Test
     void testAnyInPrefix() {
         final Map<String, Integer> testPermissions = new HashMap<>();
@@ -115,4 +135,222 @@ public class NodeTreeTest {
 
         assertFalse(nodes.anyInPrefixMatching("unrelated", n -> n > 0));
     }
+
+    @Test
+    void testFrozen() {
+        final Map<String, Integer> testPermissions = new HashMap<>();
+        testPermissions.put("generate.rainbow", 1);
+        testPermissions.put("generate.sunset", -1);
+        testPermissions.put("generate", 1);
+        testPermissions.put("generate.thunderstorm.explosive", -1);
+        testPermissions.put("my.action.user.one", 1);
+        testPermissions.put("my.action.group", -1);
+        testPermissions.put("gÉnérer.arc", 2);
+
+        final NodeTree nodes = NodeTree.of(testPermissions, -1);
+        final NodeTree frozen = nodes.freeze();
+        assertSame(frozen, frozen.freeze());
+        assertEquals(nodes.asMap(), frozen.asMap());
+        assertEquals(nodes.size(), frozen.size());
+
+        for (final String node : new String[] {"generate.rainbow", "GENERATE.sunset.east", "generate.thunderstorm",
+                "generate.thunderstorm.explosive", "random.perm", "", "generate.", "gÉnérer.ARC", "never.seen.anywhere"}) {
+            assertEquals(nodes.get(node), frozen.get(node));
+            assertEquals(nodes.getSplitting(node), frozen.getSplitting(node));
+        }
+
+        assertTrue(frozen.anyInPrefixMatching("my.action", n -> n > 0));
+        assertFalse(frozen.anyInPrefixMatching("my.action.group", n -> n > 0));
+        assertTrue(frozen.anyInPrefixMatching("generate", n -> n < 0));
+        assertFalse(frozen.anyInPrefixMatching("unrelated", n -> n > 0));
+        assertTrue(frozen.anyInPrefixMatching("GÉNÉRER", n -> n > 1));
+        assertEquals(NodeTree.of(Collections.singletonMap("generate", 1)).toString(),
+            NodeTree.of(Collections.singletonMap("generate", 1)).freeze().toString());
+
+        final NodeTree modified = frozen.withValue("generate.sunset", 1);
+        assertEquals(-1, frozen.get("generate.sunset"));
+        assertEquals(1, modified.get("generate.sunset"));
+        assertEquals(1, modified.get("generate.rainbow"));
+    }
+
+    @Test
+    void testPermissionKey() {
+        final PermissionKey beforeTree = PermissionKey.of("Generate.Sunset.East");
+        assertSame(beforeTree, PermissionKey.of("Generate.Sunset.East"));
+        assertEquals("Generate.Sunset.East", beforeTree.permission());
+        assertSame(beforeTree, PermissionKey.of("generate.sunset.east"));
+        assertSame(beforeTree, PermissionKey.unregistered("GENERATE.SUNSET.EAST"));
+
+        final Map<String, Integer> testPermissions = new HashMap<>();
+        testPermissions.put("generate.rainbow", 1);
+        testPermissions.put("generate.sunset", -1);
+        testPermissions.put("generate", 1);
+
+        final NodeTree nodes = NodeTree.of(testPermissions);
+        final NodeTree frozen = nodes.freeze();
+        for (final NodeTree tree : new NodeTree[] {nodes, frozen}) {
+            assertEquals(-1, tree.get(beforeTree));
+            assertEquals(1, tree.get(PermissionKey.of("generate.rainbow")));
+            assertEquals(1, tree.get(PermissionKey.of("generate.unknownsegment")));
+            assertEquals(0, tree.get(PermissionKey.of("unrelated")));
+        }
+
+        for (int i = 0; i < PermissionKey.MAX_REGISTERED; i++) {
+            PermissionKey.of("filler." + i);
+        }
+        final PermissionKey unregistered = PermissionKey.of("generate.rainbow.double");
+        assertNotSame(unregistered, PermissionKey.of("generate.rainbow.double"));
+        assertEquals(unregistered, PermissionKey.of("generate.rainbow.double"));
+        assertEquals(unregistered, PermissionKey.of("Generate.Rainbow.Double"));
+        assertEquals(unregistered.hashCode(), PermissionKey.of("Generate.Rainbow.Double").hashCode());
+        assertEquals(1, frozen.get(unregistered));
+        assertSame(beforeTree, PermissionKey.of("Generate.Sunset.East"));
+    }
+
+    @Test
+    void testBuilder() {
+        final Map<String, Integer> testPermissions = new HashMap<>();
+        testPermissions.put("generate.rainbow", 1);
+        testPermissions.put("generate.sunset", -1);
+        testPermissions.put("generate.thunderstorm.explosive", -1);
+
+        final NodeTree oldTree = NodeTree.of(testPermissions);
+        final NodeTree.Builder builder = oldTree.toBuilder()
+            .set("generate.sunset.red", 1)
+            .set("generate.sunset.blue", -2)
+            .set("something.new", -1);
+        final NodeTree first = builder.build();
+        final NodeTree second = builder.set("generate.rainbow", -1).build();
+
+        assertEquals(1, oldTree.get("generate.rainbow"));
+        assertEquals(-1, oldTree.get("generate.sunset.red"));
+        assertEquals(0, oldTree.get("something.new"));
+
+        assertEquals(1, first.get("generate.rainbow"));
+        assertEquals(1, first.get("generate.sunset.red"));
+        assertEquals(-2, first.get("generate.sunset.blue"));
+        assertEquals(-1, first.get("something.new"));
+        assertEquals(-1, first.get("generate.thunderstorm.explosive"));
+
+        assertEquals(-1, second.get("generate.rainbow"));
+        assertEquals(-2, second.get("generate.sunset.blue"));
+
+        final NodeTree fromFrozen = oldTree.freeze().toBuilder().set("something.new", 1).build();
+        assertEquals(1, fromFrozen.get("something.new"));
+        assertEquals(1, fromFrozen.get("generate.rainbow"));
+        assertSame(fromFrozen, fromFrozen.freeze());
+
+        final NodeTree.Builder frozenBuilder = oldTree.freeze().toBuilder()
+            .set("generate.sunset.red", 1)
+            .set("generate.sunset.blue", -2)
+            .set("something.new", -1);
+        assertEquals(first, frozenBuilder.build());
+        assertEquals(second, frozenBuilder.set("generate.rainbow", -1).build());
+        assertEquals(second.freeze(), frozenBuilder.build());
+    }
+
+    @Test
+    void testAnyInPrefixSummary() {
+        final Map<String, Integer> testPermissions = new HashMap<>();
+        testPermissions.put("my.action.user.one", 1);
+        testPermissions.put("my.action.group", -1);
+        testPermissions.put("my.hopes.user.a", -1);
+        testPermissions.put("my.hopes.user", 1);
+        testPermissions.put("my.hopes", 1);
+        testPermissions.put("my.weights", 3);
+        testPermissions.put("my.weights.light", -2);
+        testPermissions.put("my.weights.heavy.item", 5);
+
+        final NodeTree nodes = NodeTree.of(testPermissions);
+        final String[] prefixes = {"my", "my.action", "my.action.group", "my.action.user", "my.hopes", "my.hopes.user",
+            "my.hopes.user.a", "my.weights", "my.weights.light", "my.weights.heavy", "unrelated", ""};
+        for (final NodeTree tree : new NodeTree[] {nodes, nodes.freeze()}) {
+            for (final String prefix : prefixes) {
+                assertEquals(tree.anyInPrefixMatching(prefix, n -> n > 0), tree.anyInPrefixMatching(prefix, NodeTree.GRANTED));
+                assertEquals(tree.anyInPrefixMatching(prefix, n -> n < 0), tree.anyInPrefixMatching(prefix, NodeTree.DENIED));
+            }
+            assertFalse(tree.anyInPrefixMatching("my.weights", NodeTree.DENIED));
+            assertTrue(tree.anyInPrefixMatching("my.action", NodeTree.GRANTED));
+        }
+    }
+
+    @Test
+    void testEquality() {
+        final Map<String, Integer> testPermissions = new HashMap<>();
+        testPermissions.put("generate.rainbow", 1);
+        testPermissions.put("generate.sunset", -1);
+        testPermissions.put("generate", 1);
+        testPermissions.put("generate.thunderstorm.explosive", -1);
+
+        final NodeTree first = NodeTree.of(testPermissions, -1);
+        final NodeTree second = NodeTree.of(new HashMap<>(testPermissions), -1);
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertEquals(first.freeze(), second.freeze());
+        assertEquals(first.freeze().hashCode(), first.hashCode());
+        assertEquals(first, second.freeze());
+        assertEquals(first.freeze(), second);
+
+        assertNotEquals(first, NodeTree.of(testPermissions));
+        assertNotEquals(first.freeze(), second.withValue("generate.sunset", 1).freeze());
+        assertNotEquals(first, second.withValue("generate.sunset.red", 1));
+    }
+
+    @Test
+    void testDiff() {
+        final Map<String, Integer> testPermissions = new HashMap<>();
+        testPermissions.put("generate.rainbow", 1);
+        testPermissions.put("generate.sunset", -1);
+        testPermissions.put("generate", 1);
+        testPermissions.put("generate.thunderstorm.explosive", -1);
+
+        final Map<String, Integer> newPermissions = new HashMap<>();
+        newPermissions.put("generate.rainbow", 1);
+        newPermissions.put("generate.sunset", 2);
+        newPermissions.put("generate.sunset.red", 1);
+        newPermissions.put("something.new", -1);
+
+        final Map<String, Integer> expected = new HashMap<>();
+        expected.put("generate", 0);
+        expected.put("generate.sunset", 2);
+        expected.put("generate.sunset.red", 1);
+        expected.put("generate.thunderstorm.explosive", 0);
+        expected.put("something.new", -1);
+
+        final NodeTree oldTree = NodeTree.of(testPermissions);
+        final NodeTree newTree = NodeTree.of(newPermissions);
+        assertEquals(expected, oldTree.diff(newTree));
+        assertEquals(expected, oldTree.freeze().diff(newTree.freeze()));
+        assertEquals(expected, oldTree.freeze().diff(newTree));
+        assertEquals(expected, oldTree.diff(newTree.freeze()));
+        assertTrue(oldTree.diff(oldTree).isEmpty());
+        assertTrue(oldTree.diff(NodeTree.of(testPermissions).freeze()).isEmpty());
+
+        final NodeTree applied = oldTree.withAll(oldTree.diff(newTree));
+        for (final String node : new String[] {"generate", "generate.rainbow", "generate.sunset.red", "generate.sunset.blue",
+                "generate.thunderstorm.explosive", "something.new", "something"}) {
+            assertEquals(newTree.get(node), applied.get(node));
+        }
+    }
+
+    @Test
+    void testDiffIntermediateNode() {
+        final Map<String, Integer> oldPermissions = new HashMap<>();
+        oldPermissions.put("a", 1);
+        oldPermissions.put("a.b", 1);
+        final Map<String, Integer> newPermissions = new HashMap<>();
+        newPermissions.put("a", 1);
+        newPermissions.put("a.b", 2);
+
+        final NodeTree oldTree = NodeTree.of(oldPermissions);
+        final NodeTree newTree = NodeTree.of(newPermissions);
+        final Map<String, Integer> expected = Collections.singletonMap("a.b", 2);
+        assertEquals(expected, oldTree.diff(newTree));
+        assertEquals(expected, oldTree.freeze().diff(newTree.freeze()));
+        assertEquals(expected, oldTree.freeze().diff(newTree));
+        assertEquals(expected, oldTree.diff(newTree.freeze()));
+
+        // the ancestor is unchanged, so applying the diff on its own resets it
+        assertEquals(0, oldTree.withAll(expected).get("a"));
+    }
 }
@@ -30,27 +30,38 @@ import ca.stellardrift.permissionsex.impl.backend.memory.MemoryDataStore;
 import ca.stellardrift.permissionsex.impl.config.PermissionsExConfiguration;
 import ca.stellardrift.permissionsex.exception.PEBKACException;
 import ca.stellardrift.permissionsex.exception.PermissionsLoadingException;
+import ca.stellardrift.permissionsex.impl.context.ContextInheritanceClosure;
 import ca.stellardrift.permissionsex.impl.context.PEXContextDefinition;
 import ca.stellardrift.permissionsex.impl.context.ServerTagContextDefinition;
 import ca.stellardrift.permissionsex.impl.context.TimeContextDefinition;
+import ca.stellardrift.permissionsex.impl.jfr.EngineEvents;
+import ca.stellardrift.permissionsex.impl.jfr.FlightEvent;
 import ca.stellardrift.permissionsex.impl.util.CacheListenerHolder;
 import ca.stellardrift.permissionsex.impl.rank.RankLadderCache;
+import ca.stellardrift.permissionsex.impl.subject.BakedDataCache;
 import ca.stellardrift.permissionsex.impl.subject.SubjectDataCacheImpl;
+import ca.stellardrift.permissionsex.impl.subject.PartialBakeCache;
+import ca.stellardrift.permissionsex.impl.subject.SubjectDependents;
 import ca.stellardrift.permissionsex.impl.subject.ToDataSubjectRefImpl;
 import ca.stellardrift.permissionsex.impl.logging.DebugPermissionCheckNotifier;
 import ca.stellardrift.permissionsex.impl.subject.LazySubjectRef;
 import ca.stellardrift.permissionsex.impl.util.PCollections;
 import ca.stellardrift.permissionsex.logging.PermissionCheckNotifier;
+import ca.stellardrift.permissionsex.impl.logging.ProfilingPermissionCheckNotifier;
 import ca.stellardrift.permissionsex.impl.logging.RecordingPermissionCheckNotifier;
 import ca.stellardrift.permissionsex.logging.FormattedLogger;
 import ca.stellardrift.permissionsex.impl.logging.WrappingFormattedLogger;
+import ca.stellardrift.permissionsex.impl.metrics.JmxMetrics;
+import ca.stellardrift.permissionsex.impl.metrics.MetricRegistryImpl;
 import ca.stellardrift.permissionsex.impl.subject.CalculatedSubjectImpl;
+import ca.stellardrift.permissionsex.impl.subject.SubjectDataBaker;
 import ca.stellardrift.permissionsex.rank.RankLadderCollection;
 import ca.stellardrift.permissionsex.subject.SubjectRef;
 import ca.stellardrift.permissionsex.subject.SubjectType;
 import ca.stellardrift.permissionsex.impl.subject.SubjectTypeCollectionImpl;
 import ca.stellardrift.permissionsex.impl.util.Util;
 import ca.stellardrift.permissionsex.subject.SubjectTypeCollection;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import io.leangen.geantyref.TypeToken;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -59,6 +70,8 @@ import org.pcollections.TreePVector;
 import org.slf4j.Logger;
 import org.spongepowered.configurate.util.CheckedFunction;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.sql.DataSource;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -115,11 +128,20 @@ public class PermissionsEx<P> implements Consumer<ContextInheritance>,
     private final ConcurrentMap<String, SubjectTypeCollectionImpl<?>> subjectTypeCache = new ConcurrentHashMap<>();
     private @MonotonicNonNull RankLadderCache rankLadderCache;
     private volatile @Nullable CompletableFuture<ContextInheritance> cachedInheritance;
+    private volatile @Nullable CompletableFuture<ContextInheritanceClosure> cachedInheritanceClosure;
     private final CacheListenerHolder<Boolean, ContextInheritance> cachedInheritanceListeners = new CacheListenerHolder<>();
+    private final SubjectDependents subjectDependents = new SubjectDependents();
+    private final PartialBakeCache partialBakes = new PartialBakeCache();
+    private final BakedDataCache bakedDataCache;
+
+    private final MetricRegistryImpl metrics = new MetricRegistryImpl();
+    private @Nullable ObjectName metricsMBean;
 
     // Mutable state
-    private final RecordingPermissionCheckNotifier baseNotifier = new RecordingPermissionCheckNotifier();
-    private volatile PermissionCheckNotifier notifier = baseNotifier;
+    private final RecordingPermissionCheckNotifier baseNotifier;
+    private volatile PermissionCheckNotifier notifier;
+    private volatile @Nullable ProfilingPermissionCheckNotifier profiler;
+    private @Nullable Pattern debugFilter;
     private final ConcurrentMap<String, ContextDefinition<?>> contextTypes = new ConcurrentHashMap<>();
     private final AtomicReference<@Nullable State<P>> state = new AtomicReference<>();
 
@@ -143,7 +165,11 @@ public class PermissionsEx<P> implements Consumer<ContextInheritance>,
         this.logger = WrappingFormattedLogger.of(logger, false);
         this.baseDirectory = baseDirectory;
         this.asyncExecutor = asyncExecutor;
+        this.baseNotifier = new RecordingPermissionCheckNotifier(asyncExecutor);
+        this.notifier = this.baseNotifier;
         this.dataSourceProvider = databaseProvider;
+        this.bakedDataCache = new BakedDataCache(asyncExecutor);
+        this.registerMetrics();
         this.registerContextDefinitions(
                 ServerTagContextDefinition.INSTANCE,
                 TimeContextDefinition.BEFORE_TIME,
@@ -161,6 +187,33 @@ public class PermissionsEx<P> implements Consumer<ContextInheritance>,
         }
     }
 
+    private void registerMetrics() {
+        this.metrics.cacheGauges("cache.baked", this.bakedDataCache::stats);
+        this.metrics.gauge("cache.baked.stale-results", this.bakedDataCache::staleResults);
+        this.metrics.gauge("cache.baked.default-results", this.bakedDataCache::defaultResults);
+        this.metrics.gauge("checks.dropped", this.baseNotifier::droppedChecks);
+        this.metrics.cacheGauges("cache.globs", SubjectDataBaker::inheritanceGlobCacheStats);
+        this.metrics.cacheGauges("cache.subjects", () -> {
+            CacheStats ret = CacheStats.empty();
+            for (final SubjectTypeCollectionImpl<?> type : this.subjectTypeCache.values()) {
+                ret = ret.plus(type.stats());
+            }
+            return ret;
+        });
+        this.metrics.cacheGauges("cache.subject-data", () -> {
+            CacheStats ret = CacheStats.empty();
+            for (final SubjectTypeCollectionImpl<?> type : this.subjectTypeCache.values()) {
+                ret = ret.plus(type.persistentData().stats()).plus(type.transientData().stats());
+            }
+            return ret;
+        });
+        this.metrics.cacheGauges("cache.rank-ladders", () -> {
+            final @Nullable RankLadderCache ladders = this.rankLadderCache;
+            return ladders == null ? CacheStats.empty() : ladders.stats();
+        });
+        this.metrics.queueDepthGauge("executor.queue-depth", this.asyncExecutor);
+    }
+
     private SubjectType.Builder<SubjectType<?>> subjectTypeBuilder(final String id) {
         return  SubjectType.builder(id, new TypeToken<SubjectType<?>>() {})
             .serializedBy(SubjectType::name)
@@ -357,6 +410,33 @@ public class PermissionsEx<P> implements Consumer<ContextInheritance>,
         return this.notifier;
     }
 
+    /**
+     * Get the index of subjects that inherit data from each subject.
+     *
+     * @return the dependents index
+     */
+    public SubjectDependents subjectDependents() {
+        return this.subjectDependents;
+    }
+
+    /**
+     * Get the cache holding the flattened data of inherited subjects.
+     *
+     * @return the partial bake cache
+     */
+    public PartialBakeCache partialBakes() {
+        return this.partialBakes;
+    }
+
+    /**
+     * Get the cache holding calculated data for every subject.
+     *
+     * @return the baked data cache
+     */
+    public BakedDataCache bakedDataCache() {
+        return this.bakedDataCache;
+    }
+
     /**
      * Get the base notifier that logs any permission checks that gave taken place.
      * @return the notifier, even if not active
@@ -387,18 +467,50 @@ public class PermissionsEx<P> implements Consumer<ContextInheritance>,
     @Override
     public synchronized void debugMode(boolean debug, final @Nullable Pattern filterPattern) {
         if (debug) {
-            if (this.notifier instanceof DebugPermissionCheckNotifier) {
-                this.notifier = new DebugPermissionCheckNotifier(this.logger(), ((DebugPermissionCheckNotifier) this.notifier).getDelegate(), filterPattern == null ? null : perm -> filterPattern.matcher(perm).find());
-            } else {
-                this.notifier = new DebugPermissionCheckNotifier(this.logger(), this.notifier, filterPattern == null ? null : perm -> filterPattern.matcher(perm).find());
-            }
+            this.debugFilter = filterPattern;
+            this.notifier = new DebugPermissionCheckNotifier(this.logger(), this.checkNotifier(), filterPattern == null ? null : perm -> filterPattern.matcher(perm).find(), this.asyncExecutor);
         } else {
-            if (this.notifier instanceof DebugPermissionCheckNotifier) {
-                this.notifier = ((DebugPermissionCheckNotifier) this.notifier).getDelegate();
-            }
+            this.debugFilter = null;
+            this.notifier = this.checkNotifier();
         }
     }
 
+    /**
+     * Get the notifier that receives checks before they are logged for debugging.
+     *
+     * @return the profiler if profiling, or the recording notifier otherwise
+     */
+    private PermissionCheckNotifier checkNotifier() {
+        final @Nullable ProfilingPermissionCheckNotifier profiler = this.profiler;
+        return profiler == null ? this.baseNotifier : profiler;
+    }
+
+    /**
+     * Get the active profiler.
+     *
+     * @return the profiler, or null if profiling is not enabled
+     */
+    public @Nullable ProfilingPermissionCheckNotifier profiler() {
+        return this.profiler;
+    }
+
+    /**
+     * Set whether or not to profile permission checks and bakes.
+     *
+     * <p>Enabling profiling when it is already enabled will keep the existing results.
+     * Disabling profiling discards them.</p>
+     *
+     * @param profiling whether to profile
+     * @see ProfilingPermissionCheckNotifier#reset() to discard results while profiling
+     */
+    public synchronized void profiling(final boolean profiling) {
+        if (profiling == (this.profiler != null)) {
+            return;
+        }
+        this.profiler = profiling ? new ProfilingPermissionCheckNotifier(this.baseNotifier, this.asyncExecutor) : null;
+        this.debugMode(this.debugMode(), this.debugFilter);
+    }
+
     /**
      * Synchronous helper to perform reloads
      *
@@ -407,9 +519,11 @@ public class PermissionsEx<P> implements Consumer<ContextInheritance>,
      */
     private void reloadSync() throws PEBKACException, PermissionsLoadingException {
         try {
+            final FlightEvent.Span event = EngineEvents.RELOAD.begin();
             PermissionsExConfiguration<P> config = state().config.reload();
             config.validate();
             prepare(config);
+            event.set("dataStore", config.getDefaultDataStore().identifier()).commit();
             // TODO: Throw reload event to cache any relevant subject types
         } catch (IOException e) {
             throw new PEBKACException(CONFIG_ERROR_LOAD.tr(e.getLocalizedMessage()));
@@ -426,6 +540,10 @@ public class PermissionsEx<P> implements Consumer<ContextInheritance>,
      */
     private void prepare(final PermissionsExConfiguration<P> config) throws PermissionsLoadingException {
         this.debugMode(config.isDebugEnabled());
+        this.bakedDataCache.maximumBytes(config.getBakeCacheBytes());
+        this.bakedDataCache.staleChecks(config.isStaleChecksEnabled(), config.getStaleCheckDefault());
+        this.baseNotifier.sampleRate(config.getCheckSampleRate());
+        this.exportMetrics(config.isJmxMetricsEnabled());
         final DataStore newStore = config.getDefaultDataStore().defrost(this);
         State<P> newState = new State<>(config, newStore);
         boolean shouldAnnounceImports = newState.activeDataStore.firstRun();
@@ -475,6 +593,7 @@ public class PermissionsEx<P> implements Consumer<ContextInheritance>,
         });
         if (this.cachedInheritance != null) {
             this.cachedInheritance = null;
+            this.cachedInheritanceClosure = null;
             contextInheritance((Consumer<ContextInheritance>) null).thenAccept(inheritance -> this.cachedInheritanceListeners.call(true, inheritance));
         }
 
@@ -514,6 +633,31 @@ public class PermissionsEx<P> implements Consumer<ContextInheritance>,
         if (state != null) {
             state.activeDataStore.close();
         }
+        this.partialBakes.clear();
+        this.exportMetrics(false);
+    }
+
+    /**
+     * Register or unregister the JMX MBean for this engine's metrics.
+     *
+     * @param export whether metrics should be exported
+     */
+    private synchronized void exportMetrics(final boolean export) {
+        if (export && this.metricsMBean == null) {
+            try {
+                this.metricsMBean = JmxMetrics.register(this.metrics);
+            } catch (final JMException ex) {
+                this.logger().error(METRICS_ERROR_JMX.tr(), ex);
+            }
+        } else if (!export && this.metricsMBean != null) {
+            JmxMetrics.unregister(this.metricsMBean);
+            this.metricsMBean = null;
+        }
+    }
+
+    @Override
+    public MetricRegistryImpl metrics() {
+        return this.metrics;
     }
 
     public List<ConversionResult> getAvailableConversions() {
@@ -578,16 +722,37 @@ public class PermissionsEx<P> implements Consumer<ContextInheritance>,
      */
     @Override
     public CompletableFuture<ContextInheritance> contextInheritance(final @Nullable Consumer<ContextInheritance> listener) {
-        if (this.cachedInheritance == null) {
-            this.cachedInheritance = state().activeDataStore.getContextInheritance(this);
+        @Nullable CompletableFuture<ContextInheritance> inheritance = this.cachedInheritance;
+        if (inheritance == null) {
+            this.cachedInheritance = inheritance = state().activeDataStore.getContextInheritance(this);
+            this.cachedInheritanceClosure = inheritance.thenApply(ContextInheritanceClosure::of);
         }
         if (listener != null) {
             this.cachedInheritanceListeners.addListener(true, listener);
         }
-        return this.cachedInheritance;
+        return inheritance;
 
     }
 
+    /**
+     * Get every context inherited by each context, resolved from the current context inheritance.
+     *
+     * <p>This is only recalculated when the context inheritance changes.</p>
+     *
+     * @return A future providing the resolved context inheritance
+     */
+    public CompletableFuture<ContextInheritanceClosure> contextInheritanceClosure() {
+        @Nullable CompletableFuture<ContextInheritanceClosure> closure = this.cachedInheritanceClosure;
+        if (closure == null) {
+            final CompletableFuture<ContextInheritance> inheritance = contextInheritance((Consumer<ContextInheritance>) null);
+            closure = this.cachedInheritanceClosure;
+            if (closure == null) { // reset by a reload in between
+                closure = inheritance.thenApply(ContextInheritanceClosure::of);
+            }
+        }
+        return closure;
+    }
+
     /**
      * Update the context inheritance when values have been changed
      *
@@ -607,6 +772,7 @@ public class PermissionsEx<P> implements Consumer<ContextInheritance>,
     @Override
     public void accept(ContextInheritance newData) {
         this.cachedInheritance = CompletableFuture.completedFuture(newData);
+        this.cachedInheritanceClosure = CompletableFuture.completedFuture(ContextInheritanceClosure.of(newData));
         this.cachedInheritanceListeners.call(true, newData);
     }
 
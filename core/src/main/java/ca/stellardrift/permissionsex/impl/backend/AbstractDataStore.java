@@ -29,6 +29,7 @@ import ca.stellardrift.permissionsex.datastore.ProtoDataStore;
 import ca.stellardrift.permissionsex.exception.PermissionsLoadingException;
 import ca.stellardrift.permissionsex.rank.RankLadder;
 import ca.stellardrift.permissionsex.impl.util.Util;
+import ca.stellardrift.permissionsex.metrics.Timer;
 import ca.stellardrift.permissionsex.subject.SubjectRef;
 import ca.stellardrift.permissionsex.subject.SubjectType;
 import net.kyori.adventure.text.Component;
@@ -57,6 +58,8 @@ import static java.util.Objects.requireNonNull;
 public abstract class AbstractDataStore<T extends AbstractDataStore<T, C>, C> implements DataStore {
     private final DataStoreContext context;
     private final ProtoDataStore<C> properties;
+    private final Timer getDataTimer;
+    private final Timer setDataTimer;
     private boolean firstRun;
     protected final CacheListenerHolder<Map.Entry<String, String>, ImmutableSubjectData> listeners = new CacheListenerHolder<>();
     protected final CacheListenerHolder<String, RankLadder> rankLadderListeners = new CacheListenerHolder<>();
@@ -73,6 +76,8 @@ public abstract class AbstractDataStore<T extends AbstractDataStore<T, C>, C> im
     protected AbstractDataStore(final DataStoreContext context, final ProtoDataStore<C> props) {
         this.context = context;
         this.properties = props;
+        this.getDataTimer = this.timer("get-data");
+        this.setDataTimer = this.timer("set-data");
     }
 
     @Override
@@ -116,7 +121,7 @@ public abstract class AbstractDataStore<T extends AbstractDataStore<T, C>, C> im
         requireNonNull(type, "type");
         requireNonNull(identifier, "identifier");
 
-        final CompletableFuture<ImmutableSubjectData> ret = getDataInternal(type, identifier);
+        final CompletableFuture<ImmutableSubjectData> ret = this.getDataTimer.timeAsync(() -> getDataInternal(type, identifier));
         ret.thenRun(() -> {
             if (listener != null) {
                 listeners.addListener(UnmodifiableCollections.immutableMapEntry(type, identifier), listener);
@@ -131,7 +136,7 @@ public abstract class AbstractDataStore<T extends AbstractDataStore<T, C>, C> im
         requireNonNull(identifier, "identifier");
 
         final Map.Entry<String, String> lookupKey = UnmodifiableCollections.immutableMapEntry(type, identifier);
-        return setDataInternal(type, identifier, data)
+        return this.setDataTimer.timeAsync(() -> setDataInternal(type, identifier, data))
                 .thenApply(newData -> {
                     if (newData != null) {
                         listeners.call(lookupKey, newData);
@@ -140,6 +145,19 @@ public abstract class AbstractDataStore<T extends AbstractDataStore<T, C>, C> im
                 });
     }
 
+    /**
+     * Get a timer for an operation on this data store.
+     *
+     * <p>This looks the timer up by name, so data stores should keep the result
+     * rather than calling this for every operation.</p>
+     *
+     * @param operation the operation name
+     * @return a timer in the engine's metrics
+     */
+    protected final Timer timer(final String operation) {
+        return this.engine().metrics().timer("datastore." + this.name() + "." + operation);
+    }
+
     protected <V> CompletableFuture<V> runAsync(CheckedSupplier<V, ?> supplier) {
         return Util.asyncFailableFuture(supplier, this.context.asyncExecutor());
     }
@@ -25,11 +25,14 @@ import ca.stellardrift.permissionsex.impl.backend.memory.MemoryContextInheritanc
 import ca.stellardrift.permissionsex.context.ContextInheritance;
 import ca.stellardrift.permissionsex.impl.config.FilePermissionsExConfiguration;
 import ca.stellardrift.permissionsex.impl.config.SubjectRefSerializer;
+import ca.stellardrift.permissionsex.impl.jfr.EngineEvents;
+import ca.stellardrift.permissionsex.impl.jfr.FlightEvent;
 import ca.stellardrift.permissionsex.impl.util.PCollections;
 import ca.stellardrift.permissionsex.subject.ImmutableSubjectData;
 import ca.stellardrift.permissionsex.exception.PermissionsLoadingException;
 import ca.stellardrift.permissionsex.impl.rank.FixedRankLadder;
 import ca.stellardrift.permissionsex.rank.RankLadder;
+import ca.stellardrift.permissionsex.metrics.Timer;
 import ca.stellardrift.permissionsex.impl.util.Util;
 import ca.stellardrift.permissionsex.subject.SubjectRef;
 import com.google.auto.service.AutoService;
@@ -88,9 +91,11 @@ public final class FileDataStore extends AbstractDataStore<FileDataStore, FileDa
     private @MonotonicNonNull ConfigurationReference<BasicConfigurationNode> permissionsConfig;
     private final AtomicInteger saveSuppressed = new AtomicInteger();
     private final AtomicBoolean dirty = new AtomicBoolean();
+    private final Timer saveTimer;
 
     public FileDataStore(final DataStoreContext context, final ProtoDataStore<Config> properties) {
         super(context, properties);
+        this.saveTimer = this.timer("save");
     }
 
     private ConfigurationReference<BasicConfigurationNode> createLoader(Path file) throws ConfigurateException {
@@ -130,13 +135,16 @@ public final class FileDataStore extends AbstractDataStore<FileDataStore, FileDa
      * @param newNode The updated node
      */
     private void refresh(ConfigurationNode newNode) {
-        this.listeners.getAllKeys().forEach(key -> {
+        final FlightEvent.Span event = EngineEvents.FILE_REFRESH.begin();
+        long subjects = 0;
+        for (final Map.Entry<String, String> key : this.listeners.getAllKeys()) {
+            subjects++;
             try {
                 this.listeners.call(key, getDataSync(key.getKey(), key.getValue()));
             } catch (PermissionsLoadingException e) {
                 this.context().logger().error(Messages.FILE_ERROR_SUBJECT_AUTORELOAD.tr(key.getKey(), key.getValue()));
             }
-        });
+        }
 
         this.rankLadderListeners.getAllKeys().forEach(key ->
                 this.rankLadderListeners.call(key, getRankLadderInternal(key).join()));
@@ -144,6 +152,11 @@ public final class FileDataStore extends AbstractDataStore<FileDataStore, FileDa
         this.contextInheritanceListeners.getAllKeys().forEach(key ->
                 this.contextInheritanceListeners.call(key, getContextInheritanceInternal().join()));
 
+        if (event.active()) {
+            event.set("dataStore", this.name())
+                .set("subjects", subjects)
+                .commit();
+        }
         this.context().logger().info(Messages.FILE_RELOAD_AUTO.tr(config().file));
     }
 
@@ -247,7 +260,26 @@ public final class FileDataStore extends AbstractDataStore<FileDataStore, FileDa
     private void saveSync() throws ConfigurateException {
         if (this.saveSuppressed.get() <= 0) {
             if (this.dirty.compareAndSet(true, false)) {
-                this.permissionsConfig.save();
+                final FlightEvent.Span event = EngineEvents.FILE_SAVE.begin();
+                final long start = System.nanoTime();
+                try {
+                    this.permissionsConfig.save();
+                } finally {
+                    this.saveTimer.record(System.nanoTime() - start);
+                }
+                if (event.active()) {
+                    final Path file = this.context().baseDirectory().resolve(config().file);
+                    long size;
+                    try {
+                        size = Files.size(file);
+                    } catch (final IOException ex) {
+                        size = -1;
+                    }
+                    event.set("dataStore", this.name())
+                        .set("file", file.toString())
+                        .set("bytes", size)
+                        .commit();
+                }
             }
         }
     }
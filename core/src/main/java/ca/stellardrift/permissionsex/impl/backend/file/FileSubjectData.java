@@ -17,15 +17,17 @@
 package ca.stellardrift.permissionsex.impl.backend.file;
 
 import ca.stellardrift.permissionsex.impl.backend.memory.MemorySubjectData;
+import ca.stellardrift.permissionsex.context.ContextSet;
 import ca.stellardrift.permissionsex.context.ContextValue;
 import ca.stellardrift.permissionsex.exception.PermissionsLoadingException;
 import ca.stellardrift.permissionsex.impl.util.PCollections;
 import org.pcollections.PMap;
-import org.pcollections.PSet;
 import org.spongepowered.configurate.ConfigurationNode;
 import org.spongepowered.configurate.serialize.SerializationException;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,13 +35,13 @@ public final class FileSubjectData extends MemorySubjectData {
     static final String KEY_CONTEXTS = "contexts";
 
     static FileSubjectData fromNode(ConfigurationNode node) throws SerializationException, PermissionsLoadingException {
-        PMap<PSet<ContextValue<?>>, MemorySegment> map = PCollections.map();
+        PMap<ContextSet, MemorySegment> map = PCollections.map();
         if (node.isList()) {
             for (ConfigurationNode child : node.childrenList()) {
                 if (!child.isMap()) {
                     throw new PermissionsLoadingException(Messages.FILE_LOAD_CONTEXT.tr());
                 }
-                final PSet<ContextValue<?>> contexts = contextsFrom(child);
+                final ContextSet contexts = contextsFrom(child);
                 MemorySegment value = MAPPER.load(child);
                 map = map.plus(contexts, value);
             }
@@ -51,24 +53,25 @@ public final class FileSubjectData extends MemorySubjectData {
         super();
     }
 
-    FileSubjectData(final PMap<PSet<ContextValue<?>>, MemorySegment> contexts) {
+    FileSubjectData(final PMap<ContextSet, MemorySegment> contexts) {
         super(contexts);
     }
 
     @Override
-    protected MemorySubjectData newData(final PMap<PSet<ContextValue<?>>, MemorySegment> contexts) {
+    protected MemorySubjectData newData(final PMap<ContextSet, MemorySegment> contexts) {
         return new FileSubjectData(contexts);
     }
 
-    private static PSet<ContextValue<?>> contextsFrom(final ConfigurationNode node) {
-        PSet<ContextValue<?>> contexts = PCollections.set();
+    private static ContextSet contextsFrom(final ConfigurationNode node) {
         final ConfigurationNode contextsNode = node.node(KEY_CONTEXTS);
-        if (contextsNode.isMap()) {
-            contexts = contextsNode.childrenMap().entrySet().stream()
-                    .map(ent -> new ContextValue<>(ent.getKey().toString(), ent.getValue().getString()))
-                    .collect(PCollections.toPSet());
+        if (!contextsNode.isMap()) {
+            return ContextSet.empty();
         }
-        return contexts;
+        final List<ContextValue<?>> contexts = new ArrayList<>(contextsNode.childrenMap().size());
+        for (final Map.Entry<Object, ? extends ConfigurationNode> ent : contextsNode.childrenMap().entrySet()) {
+            contexts.add(new ContextValue<>(ent.getKey().toString(), ent.getValue().getString()));
+        }
+        return ContextSet.of(contexts);
     }
 
     void serialize(final ConfigurationNode node) throws SerializationException {
@@ -79,7 +82,7 @@ public final class FileSubjectData extends MemorySubjectData {
         for (final ConfigurationNode child : node.childrenList()) {
             existingSections.put(contextsFrom(child), child);
         }
-        for (final Map.Entry<PSet<ContextValue<?>>, MemorySegment> ent : this.segments.entrySet()) {
+        for (final Map.Entry<ContextSet, MemorySegment> ent : this.segments.entrySet()) {
             ConfigurationNode contextSection = existingSections.remove(ent.getKey());
             if (contextSection == null) {
                 contextSection = node.appendListNode();
@@ -16,6 +16,7 @@
  */
 package ca.stellardrift.permissionsex.impl.backend.memory;
 
+import ca.stellardrift.permissionsex.context.ContextSet;
 import ca.stellardrift.permissionsex.context.ContextValue;
 import ca.stellardrift.permissionsex.impl.util.PCollections;
 import ca.stellardrift.permissionsex.subject.ImmutableSubjectData;
@@ -23,7 +24,6 @@ import ca.stellardrift.permissionsex.subject.Segment;
 import ca.stellardrift.permissionsex.subject.SubjectRef;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.pcollections.PMap;
-import org.pcollections.PSet;
 import org.pcollections.PVector;
 import org.spongepowered.configurate.objectmapping.ObjectMapper;
 import org.spongepowered.configurate.serialize.SerializationException;
@@ -50,17 +50,17 @@ public class MemorySubjectData implements ImmutableSubjectData {
     }
 
 
-    protected final PMap<PSet<ContextValue<?>>, MemorySegment> segments;
+    protected final PMap<ContextSet, MemorySegment> segments;
 
     protected MemorySubjectData() {
         this.segments = PCollections.map();
     }
 
-    protected MemorySubjectData(final Map<PSet<ContextValue<?>>, MemorySegment> segments) {
+    protected MemorySubjectData(final Map<ContextSet, MemorySegment> segments) {
         this.segments = PCollections.asMap(segments);
     }
 
-    protected MemorySubjectData newData(final PMap<PSet<ContextValue<?>>, MemorySegment> contexts) {
+    protected MemorySubjectData newData(final PMap<ContextSet, MemorySegment> contexts) {
         if (contexts == this.segments) {
             return this;
         }
@@ -75,8 +75,8 @@ public class MemorySubjectData implements ImmutableSubjectData {
 
     @Override
     public ImmutableSubjectData withSegments(final BiFunction<Set<ContextValue<?>>, Segment, Segment> transformer) {
-        PMap<PSet<ContextValue<?>>, MemorySegment> output = this.segments;
-        for (final Map.Entry<PSet<ContextValue<?>>, MemorySegment> entry : this.segments.entrySet()) {
+        PMap<ContextSet, MemorySegment> output = this.segments;
+        for (final Map.Entry<ContextSet, MemorySegment> entry : this.segments.entrySet()) {
             final MemorySegment mapped = MemorySegment.from(transformer.apply(entry.getKey(), entry.getValue()));
             if (mapped != entry.getValue()) {
                 if (mapped.empty()) {
@@ -91,11 +91,11 @@ public class MemorySubjectData implements ImmutableSubjectData {
 
     @Override
     public ImmutableSubjectData withSegment(final Set<ContextValue<?>> contexts, final UnaryOperator<Segment> operation) {
-        final PSet<ContextValue<?>> pContexts = PCollections.asSet(contexts);
-        final Segment original = this.segments.get(pContexts);
+        final ContextSet contextSet = ContextSet.of(contexts);
+        final Segment original = this.segments.get(contextSet);
         final MemorySegment mapped = MemorySegment.from(operation.apply(original == null ? MemorySegment.create() : original));
         if (original != mapped) {
-            return newData(mapped.empty() ? this.segments.minus(pContexts) : this.segments.plus(pContexts, mapped));
+            return newData(mapped.empty() ? this.segments.minus(contextSet) : this.segments.plus(contextSet, mapped));
         } else {
             return this;
         }
@@ -110,7 +110,7 @@ public class MemorySubjectData implements ImmutableSubjectData {
     @Override
     public <V> @Nullable V mapSegment(final Set<ContextValue<?>> contexts, final Function<Segment, V> mapper) {
         requireNonNull(mapper, "mapper");
-        final MemorySegment segment = this.segments.get(PCollections.asSet(requireNonNull(contexts, "contexts")));
+        final MemorySegment segment = this.segments.get(ContextSet.of(requireNonNull(contexts, "contexts")));
         if (segment != null) {
             return mapper.apply(segment);
         }
@@ -119,7 +119,7 @@ public class MemorySubjectData implements ImmutableSubjectData {
 
     @Override
     public MemorySegment segment(final Set<ContextValue<?>> contexts) {
-        MemorySegment res = this.segments.get(PCollections.asSet(contexts));
+        MemorySegment res = this.segments.get(ContextSet.of(contexts));
         if (res == null) {
             res = MemorySegment.create();
         }
@@ -128,17 +128,17 @@ public class MemorySubjectData implements ImmutableSubjectData {
 
     @Override
     public ImmutableSubjectData withSegment(final Set<ContextValue<?>> contexts, final Segment segment) {
-        PMap<PSet<ContextValue<?>>, MemorySegment> segments;
+        PMap<ContextSet, MemorySegment> segments;
         if (segment.empty()) {
-            segments = this.segments.minus(PCollections.asSet(contexts));
+            segments = this.segments.minus(ContextSet.of(contexts));
         } else {
-            segments = this.segments.plus(PCollections.asSet(contexts), MemorySegment.from(segment));
+            segments = this.segments.plus(ContextSet.of(contexts), MemorySegment.from(segment));
         }
         return segments == this.segments ? this : newData(segments);
     }
 
     @Override
-    public Set<PSet<ContextValue<?>>> activeContexts() {
+    public Set<ContextSet> activeContexts() {
         return this.segments.keySet();
     }
 
@@ -81,6 +81,18 @@ public final class FilePermissionsExConfiguration<T> implements PermissionsExCon
         @Setting
         private boolean debug;
         @Setting
+        private boolean parallelBaking;
+        @Setting
+        private int bakeCacheSize = 64;
+        @Setting
+        private boolean staleChecks;
+        @Setting
+        private int staleCheckDefault;
+        @Setting
+        private int checkSampleRate = 1;
+        @Setting
+        private boolean jmxMetrics;
+        @Setting
         private List<String> serverTags;
 
         T platform;
@@ -96,6 +108,10 @@ public final class FilePermissionsExConfiguration<T> implements PermissionsExCon
             if (!this.backends.containsKey(this.defaultBackend)) {
                 throw new PEBKACException(Messages.CONFIG_ERROR_INVALID_DEFAULT.tr(defaultBackend, backends.keySet()));
             }
+
+            if (this.checkSampleRate < 1) {
+                this.checkSampleRate = 1;
+            }
         }
     }
 
@@ -196,6 +212,36 @@ public final class FilePermissionsExConfiguration<T> implements PermissionsExCon
         return this.instance.debug;
     }
 
+    @Override
+    public boolean isParallelBakingEnabled() {
+        return this.instance.parallelBaking;
+    }
+
+    @Override
+    public long getBakeCacheBytes() {
+        return this.instance.bakeCacheSize * 1024L * 1024L;
+    }
+
+    @Override
+    public boolean isStaleChecksEnabled() {
+        return this.instance.staleChecks;
+    }
+
+    @Override
+    public int getStaleCheckDefault() {
+        return this.instance.staleCheckDefault;
+    }
+
+    @Override
+    public int getCheckSampleRate() {
+        return this.instance.checkSampleRate;
+    }
+
+    @Override
+    public boolean isJmxMetricsEnabled() {
+        return this.instance.jmxMetrics;
+    }
+
     @Override
     public List<String> getServerTags() {
         return Collections.unmodifiableList(this.instance.serverTags);
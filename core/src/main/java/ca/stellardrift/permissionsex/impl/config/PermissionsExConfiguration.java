@@ -33,6 +33,53 @@ public interface PermissionsExConfiguration<PlatformType> {
 
     boolean isDebugEnabled();
 
+    /**
+     * Get whether subjects with several parents should have each parent baked in parallel.
+     *
+     * @return whether parallel baking is enabled
+     */
+    boolean isParallelBakingEnabled();
+
+    /**
+     * Get the approximate amount of memory calculated subject data may use.
+     *
+     * <p>Data for subjects that are currently online does not count towards this limit.</p>
+     *
+     * @return the budget for baked data, in bytes
+     */
+    long getBakeCacheBytes();
+
+    /**
+     * Get whether permission checks should use outdated data rather than wait for a subject
+     * to be calculated.
+     *
+     * @return whether stale checks are enabled
+     */
+    boolean isStaleChecksEnabled();
+
+    /**
+     * Get the permission value used by stale checks when no data has been calculated
+     * for a subject yet.
+     *
+     * @return the default permission value
+     */
+    int getStaleCheckDefault();
+
+    /**
+     * Get how many permission and option checks are made for each one that is recorded
+     * for statistics and command suggestions.
+     *
+     * @return the sample rate, where 1 records every check
+     */
+    int getCheckSampleRate();
+
+    /**
+     * Get whether engine metrics should be registered as a JMX MBean.
+     *
+     * @return whether to export metrics over JMX
+     */
+    boolean isJmxMetricsEnabled();
+
     List<String> getServerTags();
 
     void validate() throws PEBKACException;
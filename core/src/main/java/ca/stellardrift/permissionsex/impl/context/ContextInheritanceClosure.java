@@ -0,0 +1,100 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.context;
+
+import ca.stellardrift.permissionsex.context.ContextInheritance;
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.context.ContextValue;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Every context inherited by each context with parents, resolved ahead of time from a
+ * {@link ContextInheritance}.
+ */
+public final class ContextInheritanceClosure {
+    private static final ContextInheritanceClosure EMPTY = new ContextInheritanceClosure(Collections.emptyMap());
+
+    private final Map<ContextValue<?>, Set<ContextValue<?>>> inherited;
+
+    private ContextInheritanceClosure(final Map<ContextValue<?>, Set<ContextValue<?>>> inherited) {
+        this.inherited = inherited;
+    }
+
+    /**
+     * Resolve the transitive parents of every context in {@code inheritance}.
+     *
+     * @param inheritance the context inheritance to resolve
+     * @return a new closure
+     */
+    public static ContextInheritanceClosure of(final ContextInheritance inheritance) {
+        final Map<ContextValue<?>, List<ContextValue<?>>> parents = requireNonNull(inheritance, "inheritance").allParents();
+        if (parents.isEmpty()) {
+            return EMPTY;
+        }
+
+        final Map<ContextValue<?>, Set<ContextValue<?>>> inherited = new HashMap<>(parents.size() * 2);
+        for (final ContextValue<?> child : parents.keySet()) {
+            final Set<ContextValue<?>> closure = new HashSet<>();
+            final Queue<ContextValue<?>> inProgress = new ArrayDeque<>();
+            inProgress.add(child);
+            @Nullable ContextValue<?> context;
+            while ((context = inProgress.poll()) != null) {
+                if (closure.add(context)) {
+                    final @Nullable List<ContextValue<?>> contextParents = parents.get(context);
+                    if (contextParents != null) {
+                        inProgress.addAll(contextParents);
+                    }
+                }
+            }
+            inherited.put(child, Collections.unmodifiableSet(closure));
+        }
+        return new ContextInheritanceClosure(inherited);
+    }
+
+    /**
+     * Add every inherited context to a set of contexts.
+     *
+     * <p>If none of the contexts have parents, the input set is returned as a context set.</p>
+     *
+     * @param contexts the contexts to expand
+     * @return the contexts and all of their parents
+     */
+    public ContextSet expand(final Set<ContextValue<?>> contexts) {
+        @Nullable Set<ContextValue<?>> ret = null;
+        for (final ContextValue<?> context : contexts) {
+            final @Nullable Set<ContextValue<?>> inherited = this.inherited.get(context);
+            if (inherited != null) {
+                if (ret == null) {
+                    ret = new HashSet<>(contexts);
+                }
+                ret.addAll(inherited);
+            }
+        }
+        return ContextSet.of(ret == null ? contexts : ret);
+    }
+}
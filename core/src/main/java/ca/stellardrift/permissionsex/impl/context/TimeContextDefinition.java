@@ -20,6 +20,7 @@ import ca.stellardrift.permissionsex.impl.config.PermissionsExConfiguration;
 import ca.stellardrift.permissionsex.subject.CalculatedSubject;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -27,17 +28,57 @@ import java.time.temporal.ChronoUnit;
 import java.util.function.BiPredicate;
 import java.util.function.Consumer;
 
+/**
+ * Contexts that are active before or after a certain time.
+ *
+ * <p>The current time is reported as a used context value, but is not one of a subject's
+ * active contexts, since those would change every second. Instead, segments with time
+ * contexts are tested against the current time when a subject is baked, and the baked
+ * data is only kept until the next {@link #boundary(ZonedDateTime) boundary} of one of
+ * those contexts.</p>
+ */
 public final class TimeContextDefinition extends PEXContextDefinition<ZonedDateTime>  {
-    public static final TimeContextDefinition BEFORE_TIME = new TimeContextDefinition("before-time", ZonedDateTime::isBefore);
-    public static final TimeContextDefinition AFTER_TIME = new TimeContextDefinition("after-time", ZonedDateTime::isAfter);
+    public static final TimeContextDefinition BEFORE_TIME = new TimeContextDefinition("before-time", ZonedDateTime::isBefore, 0);
+    public static final TimeContextDefinition AFTER_TIME = new TimeContextDefinition("after-time", ZonedDateTime::isAfter, 1);
 
     private final ZoneId currentTimeZone = ZoneId.systemDefault();
     private final TimeContextParser[] timeParsers = TimeContextParser.parsersForZone(currentTimeZone);
     private final BiPredicate<ZonedDateTime, ZonedDateTime> comparisonFunc;
+    private final long boundaryOffsetSeconds;
 
-    private TimeContextDefinition(final String name, final BiPredicate<ZonedDateTime, ZonedDateTime> comparisonFunc) {
+    private TimeContextDefinition(final String name, final BiPredicate<ZonedDateTime, ZonedDateTime> comparisonFunc, final long boundaryOffsetSeconds) {
         super(name);
         this.comparisonFunc = comparisonFunc;
+        this.boundaryOffsetSeconds = boundaryOffsetSeconds;
+    }
+
+    /**
+     * Get the time active time contexts should be tested against.
+     *
+     * @return the current time, with second precision
+     */
+    public ZonedDateTime currentTime() {
+        return timeAt(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the time time contexts should be tested against at a certain instant.
+     *
+     * @param epochMillis the instant, in epoch milliseconds
+     * @return the time at that instant, with second precision
+     */
+    public ZonedDateTime timeAt(final long epochMillis) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), this.currentTimeZone).truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    /**
+     * Get the instant where a context of this type with the given value starts or stops matching.
+     *
+     * @param value the context value
+     * @return the first instant, in epoch milliseconds, with a different result than the instant before
+     */
+    public long boundary(final ZonedDateTime value) {
+        return value.truncatedTo(ChronoUnit.SECONDS).plusSeconds(this.boundaryOffsetSeconds).toInstant().toEpochMilli();
     }
 
     // Perform a comparison with second precision
@@ -71,7 +112,7 @@ public final class TimeContextDefinition extends PEXContextDefinition<ZonedDateT
 
     @Override
     public void accumulateCurrentValues(final CalculatedSubject subject, final Consumer<ZonedDateTime> consumer) {
-        consumer.accept(ZonedDateTime.now(this.currentTimeZone).truncatedTo(ChronoUnit.SECONDS));
+        consumer.accept(currentTime());
     }
 
     @Override
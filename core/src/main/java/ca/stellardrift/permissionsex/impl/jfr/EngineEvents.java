@@ -0,0 +1,71 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.jfr;
+
+/**
+ * The Flight Recorder events emitted by the engine.
+ *
+ * <p>All events are disabled by default. They can be enabled by name, with the prefix
+ * {@code ca.stellardrift.permissionsex.}, in a recording's settings, or together through
+ * the {@code PermissionsEx} category in JDK Mission Control.</p>
+ */
+public final class EngineEvents {
+    /**
+     * How many permission checks are made for each one recorded.
+     */
+    public static final int PERMISSION_CHECK_SAMPLE_RATE = 100;
+
+    public static final FlightEvent BAKE = new FlightEvent("Bake", "Bake Subject",
+        "Calculating the permissions, options, and parents of a subject in a set of contexts",
+        "subjectType", String.class,
+        "subject", String.class,
+        "contexts", Long.class,
+        "parents", Long.class,
+        "estimatedSize", Long.class);
+
+    public static final FlightEvent PERMISSION_CHECK = new FlightEvent("PermissionCheck", "Permission Check",
+        "Checking a permission for a subject. Only one in every " + PERMISSION_CHECK_SAMPLE_RATE + " checks is recorded",
+        "subjectType", String.class,
+        "subject", String.class,
+        "contexts", Long.class,
+        "permission", String.class,
+        "value", Long.class);
+
+    public static final FlightEvent SUBJECT_DATA_LOAD = new FlightEvent("SubjectDataLoad", "Load Subject Data",
+        "Loading data for a subject from a data store",
+        "subjectType", String.class,
+        "subject", String.class,
+        "segments", Long.class);
+
+    public static final FlightEvent FILE_SAVE = new FlightEvent("FileSave", "Save Permissions File",
+        "Writing a file data store to disk",
+        "dataStore", String.class,
+        "file", String.class,
+        "bytes", Long.class);
+
+    public static final FlightEvent FILE_REFRESH = new FlightEvent("FileRefresh", "Refresh Permissions File",
+        "Notifying listeners after a file data store was changed on disk",
+        "dataStore", String.class,
+        "subjects", Long.class);
+
+    public static final FlightEvent RELOAD = new FlightEvent("Reload", "Reload Engine",
+        "Reloading the engine configuration and data store",
+        "dataStore", String.class);
+
+    private EngineEvents() {
+    }
+}
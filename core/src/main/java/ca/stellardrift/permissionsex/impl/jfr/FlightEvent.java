@@ -0,0 +1,295 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.jfr;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A type of event that can be recorded by JDK Flight Recorder.
+ *
+ * <p>PermissionsEx targets Java 8, where the Flight Recorder API is not always present,
+ * so event types are defined at runtime through {@code jdk.jfr.EventFactory} rather than
+ * by subclassing {@code jdk.jfr.Event}. If Flight Recorder is unavailable, every event type is
+ * inert. Event types are disabled by default, and while disabled, {@link #begin()} only checks
+ * a flag and returns {@link Span#NONE}.</p>
+ *
+ * <p>Every field is either a string or a long.</p>
+ */
+public final class FlightEvent {
+    private static final String CATEGORY = "PermissionsEx";
+    private static final String NAME_PREFIX = "ca.stellardrift.permissionsex.";
+
+    private static final @Nullable Jfr JFR = Jfr.load();
+
+    private final String[] fields;
+    private final @Nullable Object factory;
+    private final @Nullable Object eventType;
+
+    /**
+     * Create and register an event type.
+     *
+     * @param name the event name, without any prefix
+     * @param label a human-readable name for the event
+     * @param description a description of the event
+     * @param fields the fields of this event, as pairs of field name and {@link String} or {@link Long} type
+     */
+    FlightEvent(final String name, final String label, final String description, final Object... fields) {
+        this.fields = new String[fields.length / 2];
+        for (int i = 0; i < this.fields.length; i++) {
+            this.fields[i] = (String) fields[i * 2];
+        }
+
+        @Nullable Object factory = null;
+        @Nullable Object eventType = null;
+        if (JFR != null) {
+            try {
+                factory = JFR.create(NAME_PREFIX + name, label, description, fields);
+                eventType = JFR.getEventType.invoke(factory);
+            } catch (final Throwable ex) {
+                factory = null;
+                eventType = null;
+            }
+        }
+        this.factory = factory;
+        this.eventType = eventType;
+    }
+
+    /**
+     * Get whether this event type is currently being recorded.
+     *
+     * @return whether the event is enabled
+     */
+    public boolean enabled() {
+        if (this.eventType == null) {
+            return false;
+        }
+        try {
+            return (boolean) JFR.isEnabled.invokeExact(this.eventType);
+        } catch (final Throwable ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Start timing an event, if this event type is enabled.
+     *
+     * @return a span for the event, or {@link Span#NONE} if it will not be recorded
+     */
+    public Span begin() {
+        if (!this.enabled()) {
+            return Span.NONE;
+        }
+        try {
+            final Object event = JFR.newEvent.invokeExact(this.factory);
+            JFR.begin.invokeExact(event);
+            return new Span(this, event);
+        } catch (final Throwable ex) {
+            return Span.NONE;
+        }
+    }
+
+    /**
+     * Start timing an event for only a random selection of calls, if this event type is enabled.
+     *
+     * @param rate one out of every this many calls will be recorded
+     * @return a span for the event, or {@link Span#NONE} if it will not be recorded
+     */
+    public Span beginSampled(final int rate) {
+        if (!this.enabled() || ThreadLocalRandom.current().nextInt(rate) != 0) {
+            return Span.NONE;
+        }
+        return this.begin();
+    }
+
+    int field(final String name) {
+        for (int i = 0; i < this.fields.length; i++) {
+            if (this.fields[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown field " + name);
+    }
+
+    /**
+     * One occurrence of an event.
+     */
+    public static final class Span {
+        /**
+         * A span that will not be recorded.
+         */
+        public static final Span NONE = new Span(null, null);
+
+        private final @Nullable FlightEvent type;
+        private final @Nullable Object event;
+
+        Span(final @Nullable FlightEvent type, final @Nullable Object event) {
+            this.type = type;
+            this.event = event;
+        }
+
+        /**
+         * Get whether this span will be recorded.
+         *
+         * <p>This can be checked before computing expensive field values.</p>
+         *
+         * @return whether this span is recorded
+         */
+        public boolean active() {
+            return this.event != null;
+        }
+
+        /**
+         * Set a string field, using the string value of {@code value}.
+         *
+         * @param field the field name
+         * @param value the value
+         * @return this span
+         */
+        public Span set(final String field, final @Nullable Object value) {
+            if (this.event != null) {
+                this.setRaw(field, value == null ? null : value.toString());
+            }
+            return this;
+        }
+
+        /**
+         * Set a numeric field.
+         *
+         * @param field the field name
+         * @param value the value
+         * @return this span
+         */
+        public Span set(final String field, final long value) {
+            if (this.event != null) {
+                this.setRaw(field, value);
+            }
+            return this;
+        }
+
+        private void setRaw(final String field, final @Nullable Object value) {
+            try {
+                JFR.set.invokeExact(this.event, this.type.field(field), value);
+            } catch (final IllegalArgumentException ex) {
+                throw ex;
+            } catch (final Throwable ignore) {
+                // recording is best-effort
+            }
+        }
+
+        /**
+         * End this span, and record it if it is still enabled and meets the configured threshold.
+         */
+        public void commit() {
+            if (this.event != null) {
+                try {
+                    JFR.commit.invokeExact(this.event);
+                } catch (final Throwable ignore) {
+                    // recording is best-effort
+                }
+            }
+        }
+    }
+
+    /**
+     * Reflective access to the Flight Recorder API.
+     */
+    static final class Jfr {
+        final Constructor<?> annotationElement;
+        final Constructor<?> valueDescriptor;
+        final Method create;
+        final Class<? extends Annotation> nameAnnotation;
+        final Class<? extends Annotation> labelAnnotation;
+        final Class<? extends Annotation> descriptionAnnotation;
+        final Class<? extends Annotation> categoryAnnotation;
+        final Class<? extends Annotation> enabledAnnotation;
+        final MethodHandle getEventType;
+        final MethodHandle isEnabled;
+        final MethodHandle newEvent;
+        final MethodHandle begin;
+        final MethodHandle set;
+        final MethodHandle commit;
+
+        static @Nullable Jfr load() {
+            try {
+                return new Jfr();
+            } catch (final ReflectiveOperationException | LinkageError | SecurityException ex) {
+                return null;
+            }
+        }
+
+        private Jfr() throws ReflectiveOperationException {
+            final Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            final Class<?> event = Class.forName("jdk.jfr.Event");
+            final Class<?> eventType = Class.forName("jdk.jfr.EventType");
+            final Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            this.annotationElement = annotationElement.getConstructor(Class.class, Object.class);
+            this.valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+            this.create = eventFactory.getMethod("create", List.class, List.class);
+            this.nameAnnotation = annotation("jdk.jfr.Name");
+            this.labelAnnotation = annotation("jdk.jfr.Label");
+            this.descriptionAnnotation = annotation("jdk.jfr.Description");
+            this.categoryAnnotation = annotation("jdk.jfr.Category");
+            this.enabledAnnotation = annotation("jdk.jfr.Enabled");
+
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            this.getEventType = lookup.findVirtual(eventFactory, "getEventType", MethodType.methodType(eventType))
+                .asType(MethodType.methodType(Object.class, Object.class));
+            this.isEnabled = lookup.findVirtual(eventType, "isEnabled", MethodType.methodType(boolean.class))
+                .asType(MethodType.methodType(boolean.class, Object.class));
+            this.newEvent = lookup.findVirtual(eventFactory, "newEvent", MethodType.methodType(event))
+                .asType(MethodType.methodType(Object.class, Object.class));
+            this.begin = lookup.findVirtual(event, "begin", MethodType.methodType(void.class))
+                .asType(MethodType.methodType(void.class, Object.class));
+            this.set = lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class))
+                .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+            this.commit = lookup.findVirtual(event, "commit", MethodType.methodType(void.class))
+                .asType(MethodType.methodType(void.class, Object.class));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Class<? extends Annotation> annotation(final String name) throws ClassNotFoundException {
+            return (Class<? extends Annotation>) Class.forName(name);
+        }
+
+        Object create(final String name, final String label, final String description, final Object... fields) throws ReflectiveOperationException {
+            final List<Object> annotations = Arrays.asList(
+                this.annotationElement.newInstance(this.nameAnnotation, name),
+                this.annotationElement.newInstance(this.labelAnnotation, label),
+                this.annotationElement.newInstance(this.descriptionAnnotation, description),
+                this.annotationElement.newInstance(this.categoryAnnotation, new String[] {CATEGORY}),
+                this.annotationElement.newInstance(this.enabledAnnotation, false)
+            );
+            final List<Object> descriptors = new ArrayList<>(fields.length / 2);
+            for (int i = 0; i < fields.length; i += 2) {
+                final Class<?> type = fields[i + 1] == Long.class ? long.class : String.class;
+                descriptors.add(this.valueDescriptor.newInstance(type, fields[i], new ArrayList<>()));
+            }
+            return this.create.invoke(null, annotations, descriptors);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.logging;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A ring buffer of checked values with a single writer, the thread making the checks,
+ * and a single reader draining them into shared counts.
+ *
+ * @param <T> the type of value checked
+ */
+final class CheckBuffer<T> {
+    static final int CAPACITY = 256; // must be a power of two
+
+    private final @Nullable Object[] values = new Object[CAPACITY];
+    private final int[] weights = new int[CAPACITY];
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong read = new AtomicLong();
+
+    /**
+     * Add a value to this buffer, if there is space.
+     *
+     * @param value the value to add
+     * @param weight the number of checks the value counts for
+     * @return the number of values now waiting to be drained, or more than the capacity if it was full
+     */
+    int offer(final T value, final int weight) {
+        final long written = this.written.get();
+        final int size = (int) (written - this.read.get());
+        if (size >= CAPACITY) {
+            return CAPACITY + 1;
+        }
+        final int idx = (int) written & (CAPACITY - 1);
+        this.values[idx] = value;
+        this.weights[idx] = weight;
+        this.written.lazySet(written + 1);
+        return size + 1;
+    }
+
+    /**
+     * Pass every value waiting in this buffer to a consumer, with the number of checks it counts for.
+     *
+     * <p>Repeated checks of the same value are passed together.</p>
+     *
+     * @param consumer the consumer to receive values
+     */
+    @SuppressWarnings("unchecked")
+    void drainTo(final ObjLongConsumer<T> consumer) {
+        final long written = this.written.get();
+        long read = this.read.get();
+        @Nullable Object run = null;
+        long runCount = 0;
+        for (; read < written; read++) {
+            final int idx = (int) read & (CAPACITY - 1);
+            final @Nullable Object value = this.values[idx];
+            this.values[idx] = null;
+            if (value != run) {
+                if (run != null) {
+                    consumer.accept((T) run, runCount);
+                }
+                run = value;
+                runCount = 0;
+            }
+            runCount += this.weights[idx];
+        }
+        if (run != null) {
+            consumer.accept((T) run, runCount);
+        }
+        this.read.lazySet(read);
+    }
+}
@@ -23,25 +23,51 @@ import ca.stellardrift.permissionsex.subject.SubjectRef;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 
+import static ca.stellardrift.permissionsex.impl.logging.Messages.CHECK_DROPPED;
+import static ca.stellardrift.permissionsex.impl.logging.Messages.CHECK_FAILED;
 import static ca.stellardrift.permissionsex.impl.logging.Messages.CHECK_OPTION;
+import static ca.stellardrift.permissionsex.impl.logging.Messages.CHECK_PARENT;
 import static ca.stellardrift.permissionsex.impl.logging.Messages.CHECK_PERMISSION;
 
 /**
  * Log debug messages
+ *
+ * <p>Checks that pass the filter are written to a bounded buffer on the checking thread, and
+ * formatted and logged in the background. If checks are made faster than they can be logged,
+ * those that do not fit in the buffer are dropped, and the number dropped is logged instead.</p>
+ *
+ * <p>Unlike formatting, the filter is applied on the checking thread. Testing a permission
+ * against the filter costs far less than formatting a message, and checks the filter rejects
+ * would otherwise fill the buffer and cause wanted checks to be dropped.</p>
  */
 public class DebugPermissionCheckNotifier implements PermissionCheckNotifier {
+    private static final int BUFFER_SIZE = 8192; // must be a power of two
+
     private final FormattedLogger logger;
     private final PermissionCheckNotifier delegate;
     private final Predicate<String> filterPredicate;
+    private final Executor executor;
+
+    private final AtomicReferenceArray<@Nullable Check> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long read; // only written while draining
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final LongAdder dropped = new LongAdder();
+    private long reportedDropped; // only accessed while draining
 
-    public DebugPermissionCheckNotifier(FormattedLogger logger, PermissionCheckNotifier delegate, final @Nullable Predicate<String> filterPredicate) {
+    public DebugPermissionCheckNotifier(FormattedLogger logger, PermissionCheckNotifier delegate, final @Nullable Predicate<String> filterPredicate, final Executor executor) {
         this.logger = logger;
         this.delegate = delegate;
         this.filterPredicate = filterPredicate == null ? x -> true : filterPredicate;
+        this.executor = executor;
     }
 
     private <I> String stringIdentifier(SubjectRef<I> identifier) {
@@ -52,25 +78,139 @@ public class DebugPermissionCheckNotifier implements PermissionCheckNotifier {
         return this.delegate;
     }
 
+    /**
+     * Get the number of checks that could not be logged because the buffer was full.
+     *
+     * @return the number of dropped checks
+     */
+    public long droppedChecks() {
+        return this.dropped.sum();
+    }
+
     @Override
     public void onPermissionCheck(SubjectRef<?> subject, Set<ContextValue<?>> contexts, String permission, int value) {
         if (this.filterPredicate.test(permission)) {
-            logger.info(CHECK_PERMISSION.tr(permission, contexts, stringIdentifier(subject), value));
+            publish(new Check(Check.PERMISSION, subject, contexts, permission, value));
         }
         delegate.onPermissionCheck(subject, contexts, permission, value);
     }
 
+    @Override
+    public void onPermissionChecks(SubjectRef<?> subject, Set<ContextValue<?>> contexts, List<String> permissions, int[] values) {
+        for (int i = 0; i < values.length; i++) {
+            final String permission = permissions.get(i);
+            if (this.filterPredicate.test(permission)) {
+                publish(new Check(Check.PERMISSION, subject, contexts, permission, values[i]));
+            }
+        }
+        delegate.onPermissionChecks(subject, contexts, permissions, values);
+    }
+
+    @Override
+    public void onPermissionCheckAll(String permission, List<? extends SubjectRef<?>> subjects, List<? extends Set<ContextValue<?>>> contexts, int[] values) {
+        if (this.filterPredicate.test(permission)) {
+            for (int i = 0; i < values.length; i++) {
+                publish(new Check(Check.PERMISSION, subjects.get(i), contexts.get(i), permission, values[i]));
+            }
+        }
+        delegate.onPermissionCheckAll(permission, subjects, contexts, values);
+    }
+
     @Override
     public void onOptionCheck(SubjectRef<?> subject, Set<ContextValue<?>> contexts, String option, String value) {
         if (this.filterPredicate.test(option)) {
-            logger.info(CHECK_OPTION.tr(option, contexts, stringIdentifier(subject), value));
+            publish(new Check(Check.OPTION, subject, contexts, option, value));
         }
         delegate.onOptionCheck(subject, contexts, option, value);
     }
 
     @Override
     public void onParentCheck(SubjectRef<?> subject, Set<ContextValue<?>> contexts, List<SubjectRef<?>> parents) {
-        logger.info(Messages.CHECK_PARENT.tr(contexts, stringIdentifier(subject), parents));
+        publish(new Check(Check.PARENT, subject, contexts, "", parents));
         delegate.onParentCheck(subject, contexts, parents);
     }
+
+    private void publish(final Check check) {
+        long slot;
+        do {
+            slot = this.claimed.get();
+            if (slot - this.read >= BUFFER_SIZE) {
+                this.dropped.increment();
+                return;
+            }
+        } while (!this.claimed.compareAndSet(slot, slot + 1));
+        this.buffer.lazySet((int) slot & (BUFFER_SIZE - 1), check);
+
+        if (this.draining.compareAndSet(false, true)) {
+            this.executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        do {
+            try {
+                long read = this.read;
+                @Nullable Check check;
+                while ((check = this.buffer.get((int) read & (BUFFER_SIZE - 1))) != null) {
+                    this.buffer.lazySet((int) read & (BUFFER_SIZE - 1), null);
+                    this.read = ++read;
+                    try {
+                        log(check);
+                    } catch (final RuntimeException ex) {
+                        this.logger.error(CHECK_FAILED.tr(), ex);
+                    }
+                }
+
+                final long dropped = this.dropped.sum();
+                if (dropped != this.reportedDropped) {
+                    final long newlyDropped = dropped - this.reportedDropped;
+                    this.reportedDropped = dropped;
+                    this.logger.warn(CHECK_DROPPED.tr(newlyDropped));
+                }
+            } finally {
+                // if logging fails entirely, the next check published starts a new drain
+                this.draining.set(false);
+            }
+            // a check may have been published after the last one we saw, while we were still marked as draining
+        } while (this.buffer.get((int) this.read & (BUFFER_SIZE - 1)) != null && this.draining.compareAndSet(false, true));
+    }
+
+    private void log(final Check check) {
+        switch (check.type) {
+            case Check.PERMISSION:
+                logger.info(CHECK_PERMISSION.tr(check.name, check.contexts, stringIdentifier(check.subject), check.value));
+                break;
+            case Check.OPTION:
+                logger.info(CHECK_OPTION.tr(check.name, check.contexts, stringIdentifier(check.subject), check.value));
+                break;
+            case Check.PARENT:
+                logger.info(CHECK_PARENT.tr(check.contexts, stringIdentifier(check.subject), check.value));
+                break;
+            default:
+                throw new IllegalStateException("Unknown check type " + check.type);
+        }
+    }
+
+    /**
+     * A single check waiting to be logged.
+     */
+    static final class Check {
+        static final int PERMISSION = 0;
+        static final int OPTION = 1;
+        static final int PARENT = 2;
+
+        final int type;
+        final SubjectRef<?> subject;
+        final Set<ContextValue<?>> contexts;
+        final String name;
+        final @Nullable Object value;
+
+        Check(final int type, final SubjectRef<?> subject, final Set<ContextValue<?>> contexts, final String name, final @Nullable Object value) {
+            this.type = type;
+            this.subject = subject;
+            this.contexts = contexts;
+            this.name = name;
+            this.value = value;
+        }
+    }
 }
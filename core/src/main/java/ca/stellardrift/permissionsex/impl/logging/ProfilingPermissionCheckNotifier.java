@@ -0,0 +1,319 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.logging;
+
+import ca.stellardrift.permissionsex.context.ContextValue;
+import ca.stellardrift.permissionsex.impl.util.HeavyHitters;
+import ca.stellardrift.permissionsex.impl.util.LatencyHistogram;
+import ca.stellardrift.permissionsex.logging.PermissionCheckNotifier;
+import ca.stellardrift.permissionsex.subject.SubjectRef;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Notification delegate that profiles which permissions, options, and subjects are checked most.
+ *
+ * <p>Besides counting checks, this records how long permission checks and bakes take for each
+ * subject type, and which subjects are baked most often. Counts are approximate, only the most
+ * frequent {@link #TRACKED_ITEMS} of each kind are tracked.</p>
+ *
+ * <p>As in {@link RecordingPermissionCheckNotifier}, checks are written to a buffer owned by the
+ * checking thread, and counted in the background, so checking threads never wait on each other.
+ * Checks that do not fit in a full buffer are {@link #droppedChecks() dropped}.</p>
+ */
+public class ProfilingPermissionCheckNotifier implements PermissionCheckNotifier {
+    /**
+     * The number of items of each kind that are tracked.
+     */
+    public static final int TRACKED_ITEMS = 256;
+
+    private final PermissionCheckNotifier delegate;
+    private volatile State state = new State();
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Executor drainExecutor;
+    private final ConcurrentLinkedQueue<ThreadBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<ThreadBuffer> buffer = ThreadLocal.withInitial(() -> {
+        final ThreadBuffer ret = new ThreadBuffer(Thread.currentThread());
+        this.buffers.add(ret);
+        return ret;
+    });
+    private final LongAdder dropped = new LongAdder();
+
+    public ProfilingPermissionCheckNotifier(final PermissionCheckNotifier delegate, final Executor drainExecutor) {
+        this.delegate = delegate;
+        this.drainExecutor = drainExecutor;
+    }
+
+    public PermissionCheckNotifier getDelegate() {
+        return this.delegate;
+    }
+
+    /**
+     * Discard everything profiled so far.
+     */
+    public void reset() {
+        this.drainLock.lock();
+        try {
+            drain(); // buffered checks are counted in the discarded state
+            this.state = new State();
+        } finally {
+            this.drainLock.unlock();
+        }
+    }
+
+    /**
+     * Get the results profiled since this profiler was created or last reset.
+     *
+     * @param limit the maximum number of items of each kind to include
+     * @return the results
+     */
+    public Profile profile(final int limit) {
+        this.drainLock.lock();
+        try {
+            drain();
+            return new Profile(this.state, limit);
+        } finally {
+            this.drainLock.unlock();
+        }
+    }
+
+    /**
+     * Get the approximate number of checks that were not counted because their thread's
+     * buffer was full.
+     *
+     * @return the number of dropped checks
+     */
+    public long droppedChecks() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Record the time taken for a permission check.
+     *
+     * @param subject the subject checked
+     * @param nanos the duration of the check, in nanoseconds
+     */
+    public void recordCheckTime(final SubjectRef<?> subject, final long nanos) {
+        this.state.checkTimes.computeIfAbsent(subject.type().name(), k -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Record the time taken to bake data for a subject.
+     *
+     * @param subject the subject baked
+     * @param nanos the duration of the bake, in nanoseconds
+     */
+    public void recordBakeTime(final SubjectRef<?> subject, final long nanos) {
+        final State state = this.state;
+        state.bakedSubjects.add(subject);
+        state.bakeTimes.computeIfAbsent(subject.type().name(), k -> new LatencyHistogram()).record(nanos);
+    }
+
+    @Override
+    public void onPermissionCheck(final SubjectRef<?> subject, final Set<ContextValue<?>> contexts, final String permission, final int value) {
+        final ThreadBuffer buffer = this.buffer.get();
+        record(buffer.permissions, permission, 1);
+        record(buffer.checkedSubjects, subject, 1);
+        this.delegate.onPermissionCheck(subject, contexts, permission, value);
+    }
+
+    @Override
+    public void onPermissionChecks(final SubjectRef<?> subject, final Set<ContextValue<?>> contexts, final List<String> permissions, final int[] values) {
+        final ThreadBuffer buffer = this.buffer.get();
+        for (final String permission : permissions) {
+            record(buffer.permissions, permission, 1);
+        }
+        record(buffer.checkedSubjects, subject, permissions.size());
+        this.delegate.onPermissionChecks(subject, contexts, permissions, values);
+    }
+
+    @Override
+    public void onPermissionCheckAll(final String permission, final List<? extends SubjectRef<?>> subjects, final List<? extends Set<ContextValue<?>>> contexts, final int[] values) {
+        final ThreadBuffer buffer = this.buffer.get();
+        record(buffer.permissions, permission, subjects.size());
+        for (final SubjectRef<?> subject : subjects) {
+            record(buffer.checkedSubjects, subject, 1);
+        }
+        this.delegate.onPermissionCheckAll(permission, subjects, contexts, values);
+    }
+
+    @Override
+    public void onOptionCheck(final SubjectRef<?> subject, final Set<ContextValue<?>> contexts, final String option, final @Nullable String value) {
+        final ThreadBuffer buffer = this.buffer.get();
+        record(buffer.options, option, 1);
+        record(buffer.checkedSubjects, subject, 1);
+        this.delegate.onOptionCheck(subject, contexts, option, value);
+    }
+
+    @Override
+    public void onParentCheck(final SubjectRef<?> subject, final Set<ContextValue<?>> contexts, final List<SubjectRef<?>> parents) {
+        record(this.buffer.get().checkedSubjects, subject, 1);
+        this.delegate.onParentCheck(subject, contexts, parents);
+    }
+
+    private <T> void record(final CheckBuffer<T> buffer, final T value, final int weight) {
+        final int pending = buffer.offer(value, weight);
+        if (pending > CheckBuffer.CAPACITY) { // full, so leave the check out rather than wait for a drain
+            this.dropped.add(weight);
+        }
+        if (pending >= CheckBuffer.CAPACITY / 2 && this.drainScheduled.compareAndSet(false, true)) {
+            this.drainExecutor.execute(() -> {
+                this.drainScheduled.set(false);
+                this.drainLock.lock();
+                try {
+                    drain();
+                } finally {
+                    this.drainLock.unlock();
+                }
+            });
+        }
+    }
+
+    /**
+     * Count every buffered check in the current state.
+     *
+     * <p>Must be called while holding the drain lock.</p>
+     */
+    private void drain() {
+        final State state = this.state;
+        for (final Iterator<ThreadBuffer> it = this.buffers.iterator(); it.hasNext();) {
+            final ThreadBuffer buffer = it.next();
+            buffer.permissions.drainTo(state.permissions::add);
+            buffer.options.drainTo(state.options::add);
+            buffer.checkedSubjects.drainTo(state.checkedSubjects::add);
+            if (buffer.thread.get() == null) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Checks made by a single thread.
+     */
+    static final class ThreadBuffer {
+        final WeakReference<Thread> thread;
+        final CheckBuffer<String> permissions = new CheckBuffer<>();
+        final CheckBuffer<String> options = new CheckBuffer<>();
+        final CheckBuffer<SubjectRef<?>> checkedSubjects = new CheckBuffer<>();
+
+        ThreadBuffer(final Thread thread) {
+            this.thread = new WeakReference<>(thread);
+        }
+    }
+
+    static final class State {
+        final long startNanos = System.nanoTime();
+        final HeavyHitters<String> permissions = new HeavyHitters<>(TRACKED_ITEMS);
+        final HeavyHitters<String> options = new HeavyHitters<>(TRACKED_ITEMS);
+        final HeavyHitters<SubjectRef<?>> checkedSubjects = new HeavyHitters<>(TRACKED_ITEMS);
+        final HeavyHitters<SubjectRef<?>> bakedSubjects = new HeavyHitters<>(TRACKED_ITEMS);
+        final Map<String, LatencyHistogram> checkTimes = new ConcurrentHashMap<>();
+        final Map<String, LatencyHistogram> bakeTimes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * A snapshot of profiling results.
+     */
+    public static final class Profile {
+        private final Duration duration;
+        private final List<HeavyHitters.Entry<String>> permissions;
+        private final List<HeavyHitters.Entry<String>> options;
+        private final List<HeavyHitters.Entry<SubjectRef<?>>> checkedSubjects;
+        private final List<HeavyHitters.Entry<SubjectRef<?>>> bakedSubjects;
+        private final Map<String, LatencyHistogram.Snapshot> checkTimes;
+        private final Map<String, LatencyHistogram.Snapshot> bakeTimes;
+
+        Profile(final State state, final int limit) {
+            this.duration = Duration.ofNanos(System.nanoTime() - state.startNanos);
+            this.permissions = Collections.unmodifiableList(state.permissions.top(limit));
+            this.options = Collections.unmodifiableList(state.options.top(limit));
+            this.checkedSubjects = Collections.unmodifiableList(state.checkedSubjects.top(limit));
+            this.bakedSubjects = Collections.unmodifiableList(state.bakedSubjects.top(limit));
+            this.checkTimes = snapshot(state.checkTimes);
+            this.bakeTimes = snapshot(state.bakeTimes);
+        }
+
+        private static Map<String, LatencyHistogram.Snapshot> snapshot(final Map<String, LatencyHistogram> histograms) {
+            final Map<String, LatencyHistogram.Snapshot> ret = new TreeMap<>();
+            histograms.forEach((type, histogram) -> ret.put(type, histogram.snapshot()));
+            return Collections.unmodifiableMap(ret);
+        }
+
+        /**
+         * How long profiling ran for before this snapshot was taken.
+         *
+         * @return the profiled duration
+         */
+        public Duration duration() {
+            return this.duration;
+        }
+
+        public List<HeavyHitters.Entry<String>> permissions() {
+            return this.permissions;
+        }
+
+        public List<HeavyHitters.Entry<String>> options() {
+            return this.options;
+        }
+
+        /**
+         * The subjects that had the most permissions, options, and parents checked.
+         *
+         * @return the most checked subjects
+         */
+        public List<HeavyHitters.Entry<SubjectRef<?>>> checkedSubjects() {
+            return this.checkedSubjects;
+        }
+
+        public List<HeavyHitters.Entry<SubjectRef<?>>> bakedSubjects() {
+            return this.bakedSubjects;
+        }
+
+        /**
+         * Permission check durations, by subject type.
+         *
+         * @return check durations
+         */
+        public Map<String, LatencyHistogram.Snapshot> checkTimes() {
+            return this.checkTimes;
+        }
+
+        /**
+         * Bake durations, by subject type.
+         *
+         * @return bake durations
+         */
+        public Map<String, LatencyHistogram.Snapshot> bakeTimes() {
+            return this.bakeTimes;
+        }
+    }
+}
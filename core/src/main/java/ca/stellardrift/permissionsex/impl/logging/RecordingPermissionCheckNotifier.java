@@ -20,53 +20,233 @@ import ca.stellardrift.permissionsex.context.ContextValue;
 import ca.stellardrift.permissionsex.logging.PermissionCheckNotifier;
 import ca.stellardrift.permissionsex.subject.SubjectRef;
 
+import java.lang.ref.WeakReference;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Notification delegate for permissions checks that tracks recent permission checks.
  *
- * Allows accessing currently known permissions
+ * <p>Allows accessing currently known permissions and options, and how often each has been checked.</p>
+ *
+ * <p>Recording a check only writes to a buffer owned by the checking thread. Buffers are drained
+ * into the known permissions and options in the background once one is half full, and whenever
+ * those are read. If a buffer fills up before it is drained, further checks are
+ * {@link #droppedChecks() dropped} until it has been, so checking threads never wait.
+ * Checks can also be sampled, so only one in every {@link #sampleRate(int) n} checks made by
+ * a thread is recorded, counting for the sample rate in effect when it was recorded.</p>
  */
 public class RecordingPermissionCheckNotifier implements PermissionCheckNotifier {
     private static final int MAX_SIZE = 500;
 
-    private final Set<String> knownPermissions = sizeLimitedSet(MAX_SIZE);
-    private final Set<String> knownOptions = sizeLimitedSet(MAX_SIZE);
+    private final Map<String, long[]> knownPermissions = sizeLimitedMap(MAX_SIZE);
+    private final Map<String, long[]> knownOptions = sizeLimitedMap(MAX_SIZE);
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Executor drainExecutor;
+    private final ConcurrentLinkedQueue<ThreadBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<ThreadBuffer> buffer = ThreadLocal.withInitial(() -> {
+        final ThreadBuffer ret = new ThreadBuffer(Thread.currentThread());
+        this.buffers.add(ret);
+        return ret;
+    });
+    private final LongAdder dropped = new LongAdder();
+    private volatile int sampleRate = 1;
+
+    public RecordingPermissionCheckNotifier(final Executor drainExecutor) {
+        this.drainExecutor = drainExecutor;
+    }
 
-    private static <T> Set<T> sizeLimitedSet(final int maxSize) {
-        return Collections.newSetFromMap(new LinkedHashMap<T, Boolean>() {
+    private static <T> Map<T, long[]> sizeLimitedMap(final int maxSize) {
+        return new LinkedHashMap<T, long[]>(16, 0.75f, true) {
             private static final long serialVersionUID = 9025221898274056636L;
 
             @Override
-            protected boolean removeEldestEntry(Map.Entry<T, Boolean> eldest) {
+            protected boolean removeEldestEntry(Map.Entry<T, long[]> eldest) {
                 return size() > maxSize;
             }
-        });
+        };
+    }
+
+    /**
+     * Set how many checks each thread makes for every check that is recorded.
+     *
+     * @param sampleRate the sample rate, where 1 records every check
+     */
+    public void sampleRate(final int sampleRate) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Sample rate must be at least 1, but was " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
     }
+
     @Override
     public void onPermissionCheck(SubjectRef<?> subject, Set<ContextValue<?>> contexts, String permission, int value) {
-        knownPermissions.add(permission);
+        final ThreadBuffer buffer = this.buffer.get();
+        final int sampleRate = this.sampleRate;
+        if (buffer.sample(sampleRate)) {
+            record(buffer.permissions, permission, sampleRate);
+        }
+    }
 
+    @Override
+    public void onPermissionChecks(SubjectRef<?> subject, Set<ContextValue<?>> contexts, List<String> permissions, int[] values) {
+        final ThreadBuffer buffer = this.buffer.get();
+        final int sampleRate = this.sampleRate;
+        for (final String permission : permissions) {
+            if (buffer.sample(sampleRate)) {
+                record(buffer.permissions, permission, sampleRate);
+            }
+        }
+    }
+
+    @Override
+    public void onPermissionCheckAll(String permission, List<? extends SubjectRef<?>> subjects, List<? extends Set<ContextValue<?>>> contexts, int[] values) {
+        final ThreadBuffer buffer = this.buffer.get();
+        final int sampleRate = this.sampleRate;
+        for (int i = 0; i < values.length; i++) {
+            if (buffer.sample(sampleRate)) {
+                record(buffer.permissions, permission, sampleRate);
+            }
+        }
     }
 
     @Override
     public void onOptionCheck(SubjectRef<?> subject, Set<ContextValue<?>> contexts, String option, String value) {
-        knownOptions.add(option);
+        final ThreadBuffer buffer = this.buffer.get();
+        final int sampleRate = this.sampleRate;
+        if (buffer.sample(sampleRate)) {
+            record(buffer.options, option, sampleRate);
+        }
     }
 
     @Override
     public void onParentCheck(SubjectRef<?> subject, Set<ContextValue<?>> contexts, List<SubjectRef<?>> parents) {
     }
 
+    private void record(final CheckBuffer<String> buffer, final String value, final int weight) {
+        final int pending = buffer.offer(value, weight);
+        if (pending > CheckBuffer.CAPACITY) { // full, so leave the check out rather than wait for a drain
+            this.dropped.add(weight);
+        }
+        if (pending >= CheckBuffer.CAPACITY / 2 && this.drainScheduled.compareAndSet(false, true)) {
+            this.drainExecutor.execute(() -> {
+                this.drainScheduled.set(false);
+                this.drainLock.lock();
+                try {
+                    drain();
+                } finally {
+                    this.drainLock.unlock();
+                }
+            });
+        }
+    }
+
+    /**
+     * Move every buffered check into the known permissions and options.
+     *
+     * <p>Must be called while holding the drain lock.</p>
+     */
+    private void drain() {
+        for (final Iterator<ThreadBuffer> it = this.buffers.iterator(); it.hasNext();) {
+            final ThreadBuffer buffer = it.next();
+            buffer.permissions.drainTo((permission, count) -> this.knownPermissions.computeIfAbsent(permission, k -> new long[1])[0] += count);
+            buffer.options.drainTo((option, count) -> this.knownOptions.computeIfAbsent(option, k -> new long[1])[0] += count);
+            if (buffer.thread.get() == null) {
+                it.remove();
+            }
+        }
+    }
+
+    private Set<String> drainedKeys(final Map<String, long[]> known) {
+        this.drainLock.lock();
+        try {
+            drain();
+            return Collections.unmodifiableSet(new LinkedHashSet<>(known.keySet()));
+        } finally {
+            this.drainLock.unlock();
+        }
+    }
+
+    private Map<String, Long> drainedCounts(final Map<String, long[]> known) {
+        this.drainLock.lock();
+        try {
+            drain();
+            final Map<String, Long> ret = new LinkedHashMap<>(known.size() * 2);
+            for (final Map.Entry<String, long[]> ent : known.entrySet()) {
+                ret.put(ent.getKey(), ent.getValue()[0]);
+            }
+            return Collections.unmodifiableMap(ret);
+        } finally {
+            this.drainLock.unlock();
+        }
+    }
+
     public Set<String> getKnownPermissions() {
-        return Collections.unmodifiableSet(knownPermissions);
+        return drainedKeys(this.knownPermissions);
     }
 
     public Set<String> getKnownOptions() {
-        return Collections.unmodifiableSet(knownOptions);
+        return drainedKeys(this.knownOptions);
+    }
+
+    /**
+     * Get the approximate number of checks made for each known permission.
+     *
+     * @return a snapshot of permission check counts
+     */
+    public Map<String, Long> getPermissionCheckCounts() {
+        return drainedCounts(this.knownPermissions);
+    }
+
+    /**
+     * Get the approximate number of checks made for each known option.
+     *
+     * @return a snapshot of option check counts
+     */
+    public Map<String, Long> getOptionCheckCounts() {
+        return drainedCounts(this.knownOptions);
+    }
+
+    /**
+     * Get the approximate number of checks that were not counted because their thread's
+     * buffer was full.
+     *
+     * @return the number of dropped checks
+     */
+    public long droppedChecks() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Checks recorded by a single thread.
+     */
+    static final class ThreadBuffer {
+        final WeakReference<Thread> thread;
+        final CheckBuffer<String> permissions = new CheckBuffer<>();
+        final CheckBuffer<String> options = new CheckBuffer<>();
+        private int sinceSample;
+
+        ThreadBuffer(final Thread thread) {
+            this.thread = new WeakReference<>(thread);
+        }
+
+        boolean sample(final int sampleRate) {
+            if (++this.sinceSample < sampleRate) {
+                return false;
+            }
+            this.sinceSample = 0;
+            return true;
+        }
     }
 }
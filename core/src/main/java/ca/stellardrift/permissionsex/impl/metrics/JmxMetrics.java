@@ -0,0 +1,128 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.metrics;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exposes the values of a metric registry as read-only attributes of an MBean.
+ *
+ * <p>The set of attributes is read again every time the MBean is inspected,
+ * so metrics registered after export will still appear. Reading an attribute
+ * only reads the metric it belongs to.</p>
+ */
+public final class JmxMetrics implements DynamicMBean {
+    private static final String DOMAIN = "ca.stellardrift.permissionsex";
+    private static final AtomicInteger ENGINE_COUNTER = new AtomicInteger();
+
+    private final MetricRegistryImpl registry;
+
+    private JmxMetrics(final MetricRegistryImpl registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Register an MBean for a registry with the platform MBean server.
+     *
+     * @param registry the registry to export
+     * @return the name the MBean was registered under, to pass to {@link #unregister(ObjectName)}
+     * @throws JMException if unable to register the MBean
+     */
+    public static ObjectName register(final MetricRegistryImpl registry) throws JMException {
+        final ObjectName name = new ObjectName(DOMAIN + ":type=Metrics,engine=" + ENGINE_COUNTER.getAndIncrement());
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new JmxMetrics(registry), name);
+        return name;
+    }
+
+    /**
+     * Remove a previously registered MBean.
+     *
+     * @param name the name returned by {@link #register(MetricRegistryImpl)}
+     */
+    public static void unregister(final ObjectName name) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (final JMException ignore) {
+            // already gone
+        }
+    }
+
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+        final @Nullable Number value = this.registry.value(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only");
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+        final AttributeList ret = new AttributeList(attributes.length);
+        for (final String attribute : attributes) {
+            final @Nullable Number value = this.registry.value(attribute);
+            if (value != null) {
+                ret.add(new Attribute(attribute, value));
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params, final String[] signature) throws ReflectionException {
+        // metrics have no operations
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        final Map<String, Class<? extends Number>> types = this.registry.valueTypes();
+        final MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[types.size()];
+        int i = 0;
+        for (final Map.Entry<String, Class<? extends Number>> entry : types.entrySet()) {
+            attributes[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getName(), entry.getKey(), true, false, false);
+        }
+        return new MBeanInfo(JmxMetrics.class.getName(), "PermissionsEx engine metrics", attributes, null, null, null);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.metrics;
+
+import ca.stellardrift.permissionsex.impl.util.LatencyHistogram;
+import ca.stellardrift.permissionsex.metrics.Counter;
+import ca.stellardrift.permissionsex.metrics.MetricRegistry;
+import ca.stellardrift.permissionsex.metrics.Timer;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A metric registry that holds all values in memory.
+ */
+public final class MetricRegistryImpl implements MetricRegistry {
+    private static final String TIMER_COUNT = ".count";
+    private static final String TIMER_MEAN = ".mean-nanos";
+    private static final String TIMER_P50 = ".p50-nanos";
+    private static final String TIMER_P99 = ".p99-nanos";
+
+    private final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<>();
+
+    @Override
+    public Counter counter(final String name) {
+        return this.getOrCreate(name, "counter", CounterImpl.class, CounterImpl::new);
+    }
+
+    @Override
+    public Timer timer(final String name) {
+        return this.getOrCreate(name, "timer", LatencyHistogram.class, LatencyHistogram::new);
+    }
+
+    @Override
+    public void gauge(final String name, final Supplier<? extends Number> value) {
+        requireNonNull(value, "value");
+        this.metrics.compute(requireNonNull(name, "name"), (k, existing) -> {
+            if (existing != null && !(existing instanceof Gauge)) {
+                throw new IllegalArgumentException("Metric " + name + " is not a gauge");
+            }
+            return new Gauge(value);
+        });
+    }
+
+    /**
+     * Register gauges for the statistics of a Caffeine cache.
+     *
+     * <p>The cache must have been built with {@code recordStats()} for these to be non-zero.</p>
+     *
+     * @param prefix the prefix for gauge names
+     * @param stats a supplier for the current statistics
+     */
+    public void cacheGauges(final String prefix, final Supplier<CacheStats> stats) {
+        this.gauge(prefix + ".hits", () -> stats.get().hitCount());
+        this.gauge(prefix + ".misses", () -> stats.get().missCount());
+        this.gauge(prefix + ".hit-rate", () -> stats.get().hitRate());
+        this.gauge(prefix + ".evictions", () -> stats.get().evictionCount());
+        this.gauge(prefix + ".load-failures", () -> stats.get().loadFailureCount());
+        this.gauge(prefix + ".load-mean-nanos", () -> (long) stats.get().averageLoadPenalty());
+    }
+
+    /**
+     * Register a gauge for the number of tasks waiting to run on an executor, if its queue can be inspected.
+     *
+     * @param name the gauge name
+     * @param executor the executor
+     */
+    public void queueDepthGauge(final String name, final Executor executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            this.gauge(name, () -> ((ThreadPoolExecutor) executor).getQueue().size());
+        } else if (executor instanceof ForkJoinPool) {
+            this.gauge(name, () -> ((ForkJoinPool) executor).getQueuedSubmissionCount() + ((ForkJoinPool) executor).getQueuedTaskCount());
+        }
+    }
+
+    private <T> T getOrCreate(final String name, final String kind, final Class<T> type, final Supplier<T> factory) {
+        final Object existing = this.metrics.computeIfAbsent(requireNonNull(name, "name"), k -> factory.get());
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException("Metric " + name + " is not a " + kind);
+        }
+        return type.cast(existing);
+    }
+
+    @Override
+    public Map<String, Number> snapshot() {
+        final Map<String, Number> ret = new TreeMap<>();
+        this.metrics.forEach((name, metric) -> {
+            if (metric instanceof CounterImpl) {
+                ret.put(name, ((CounterImpl) metric).count());
+            } else if (metric instanceof Gauge) {
+                ret.put(name, ((Gauge) metric).value.get());
+            } else if (metric instanceof LatencyHistogram) {
+                final LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) metric).snapshot();
+                ret.put(name + TIMER_COUNT, snapshot.count());
+                ret.put(name + TIMER_MEAN, snapshot.meanNanos());
+                ret.put(name + TIMER_P50, snapshot.percentileNanos(0.5));
+                ret.put(name + TIMER_P99, snapshot.percentileNanos(0.99));
+            }
+        });
+        return Collections.unmodifiableMap(ret);
+    }
+
+    /**
+     * Get one of the values that would appear in a {@link #snapshot()}, without reading any other metric.
+     *
+     * @param name the name of the value
+     * @return the current value, or null if there is no value with that name
+     */
+    public @Nullable Number value(final String name) {
+        final @Nullable Object metric = this.metrics.get(requireNonNull(name, "name"));
+        if (metric instanceof CounterImpl) {
+            return ((CounterImpl) metric).count();
+        } else if (metric instanceof Gauge) {
+            return ((Gauge) metric).value.get();
+        }
+
+        final int split = name.lastIndexOf('.');
+        final @Nullable Object timer = split == -1 ? null : this.metrics.get(name.substring(0, split));
+        if (!(timer instanceof LatencyHistogram)) {
+            return null;
+        }
+        switch (name.substring(split)) {
+            case TIMER_COUNT:
+                return ((LatencyHistogram) timer).count();
+            case TIMER_MEAN:
+                return ((LatencyHistogram) timer).snapshot().meanNanos();
+            case TIMER_P50:
+                return ((LatencyHistogram) timer).snapshot().percentileNanos(0.5);
+            case TIMER_P99:
+                return ((LatencyHistogram) timer).snapshot().percentileNanos(0.99);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the name and type of every value that would appear in a {@link #snapshot()}, without
+     * reading any of them.
+     *
+     * <p>The type of a gauge is only known once it is read, so gauges are reported as {@link Number}.</p>
+     *
+     * @return value types, by name
+     */
+    public Map<String, Class<? extends Number>> valueTypes() {
+        final Map<String, Class<? extends Number>> ret = new TreeMap<>();
+        this.metrics.forEach((name, metric) -> {
+            if (metric instanceof CounterImpl) {
+                ret.put(name, Long.class);
+            } else if (metric instanceof Gauge) {
+                ret.put(name, Number.class);
+            } else if (metric instanceof LatencyHistogram) {
+                ret.put(name + TIMER_COUNT, Long.class);
+                ret.put(name + TIMER_MEAN, Long.class);
+                ret.put(name + TIMER_P50, Long.class);
+                ret.put(name + TIMER_P99, Long.class);
+            }
+        });
+        return Collections.unmodifiableMap(ret);
+    }
+
+    static final class CounterImpl implements Counter {
+        private final LongAdder count = new LongAdder();
+
+        @Override
+        public void add(final long amount) {
+            this.count.add(amount);
+        }
+
+        @Override
+        public long count() {
+            return this.count.sum();
+        }
+    }
+
+    static final class Gauge {
+        final Supplier<? extends Number> value;
+
+        Gauge(final Supplier<? extends Number> value) {
+            this.value = value;
+        }
+    }
+}
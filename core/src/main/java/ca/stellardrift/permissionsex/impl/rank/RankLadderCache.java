@@ -21,6 +21,7 @@ import ca.stellardrift.permissionsex.impl.util.CacheListenerHolder;
 import ca.stellardrift.permissionsex.rank.RankLadder;
 import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.util.Map;
@@ -48,6 +49,7 @@ public class RankLadderCache implements ca.stellardrift.permissionsex.rank.RankL
         this.dataStore = dataStore;
         cache = Caffeine.newBuilder()
                 .maximumSize(256)
+                .recordStats()
                 .buildAsync((key, executor) -> dataStore.getRankLadder(key, clearListener(key)));
         if (existing != null) {
             listeners = existing.listeners;
@@ -59,6 +61,15 @@ public class RankLadderCache implements ca.stellardrift.permissionsex.rank.RankL
         }
     }
 
+    /**
+     * Get statistics for this cache, including hits, misses, and evictions.
+     *
+     * @return the current statistics
+     */
+    public CacheStats stats() {
+        return this.cache.synchronous().stats();
+    }
+
     @Override
     public CompletableFuture<RankLadder> get(final String identifier, final @Nullable Consumer<RankLadder> listener) {
         Objects.requireNonNull(identifier, "identifier");
@@ -0,0 +1,298 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.subject;
+
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.context.ContextValue;
+import ca.stellardrift.permissionsex.impl.util.PCollections;
+import ca.stellardrift.permissionsex.util.NodeTree;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A cache of baked data for every calculated subject in an engine.
+ *
+ * <p>Entries are weighted by the estimated size of their data. Data for subjects with
+ * an associated native object, such as online players, has no weight, so it is not
+ * evicted to stay within the budget. Like any other data, it is still removed once
+ * it has not been used for a minute.</p>
+ *
+ * <p>The keys cached for each subject are tracked, so a subject's entries can be found
+ * and removed without going through the whole cache. Each key also holds the subject's
+ * generation, which is increased on invalidation so bakes still in progress at that time
+ * are not reused. Data baked with time contexts is replaced once it is no longer
+ * {@link BakedSubjectData#validUntil() valid}.</p>
+ *
+ * <p>When stale checks are enabled, the last data baked for each subject and context set
+ * is also remembered until it has not been used for a minute, even once it has been
+ * invalidated, so queries can be answered from it while newer data is baked in the
+ * background. This data is weighed the same way, and held to its own budget of the
+ * same size.</p>
+ */
+public final class BakedDataCache {
+    private static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
+
+    private final AsyncCache<Key, BakedSubjectData> cache;
+    private final Cache<Key, BakedSubjectData> latest;
+    private final Map<CalculatedSubjectImpl<?>, Set<Key>> subjectKeys = Caffeine.newBuilder()
+            .weakKeys()
+            .<CalculatedSubjectImpl<?>, Set<Key>>build()
+            .asMap();
+    private final StatsCounter stats = new ConcurrentStatsCounter();
+    private final LongAdder staleResults = new LongAdder();
+    private final LongAdder defaultResults = new LongAdder();
+    private volatile @Nullable BakedSubjectData staleDefault;
+
+    public BakedDataCache(final Executor executor) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(DEFAULT_MAXIMUM_BYTES)
+                .weigher(BakedDataCache::weigh)
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .executor(requireNonNull(executor, "executor"))
+                .removalListener((@Nullable Key key, @Nullable BakedSubjectData value, RemovalCause cause) -> {
+                    if (key != null && cause != RemovalCause.REPLACED) {
+                        this.forget(key);
+                    }
+                })
+                .recordStats(() -> this.stats)
+                .buildAsync();
+        this.latest = Caffeine.newBuilder()
+                .maximumWeight(DEFAULT_MAXIMUM_BYTES)
+                .weigher(BakedDataCache::weigh)
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .executor(executor)
+                .build();
+    }
+
+    private static int weigh(final Key key, final BakedSubjectData value) {
+        return key.subject.associatedObject() != null ? 0 : value.estimatedSize();
+    }
+
+    /**
+     * Set the approximate amount of memory baked data may use, not counting data of
+     * subjects with an associated native object.
+     *
+     * <p>The data kept for stale checks has a separate budget of the same size.</p>
+     *
+     * @param maximumBytes the budget, in bytes
+     */
+    public void maximumBytes(final long maximumBytes) {
+        this.cache.synchronous().policy().eviction().ifPresent(eviction -> eviction.setMaximum(maximumBytes));
+        this.latest.policy().eviction().ifPresent(eviction -> eviction.setMaximum(maximumBytes));
+    }
+
+    /**
+     * Set whether queries may be answered with outdated data instead of waiting for a bake.
+     *
+     * @param enabled whether to answer queries without waiting
+     * @param defaultValue the permission default to use when nothing has been baked for a subject yet
+     */
+    public void staleChecks(final boolean enabled, final int defaultValue) {
+        if (enabled) {
+            this.staleDefault = new BakedSubjectData(NodeTree.of(Collections.emptyMap(), defaultValue), PCollections.vector(), PCollections.map(), Long.MAX_VALUE);
+        } else {
+            this.staleDefault = null;
+            this.latest.invalidateAll();
+        }
+    }
+
+    /**
+     * Get the number of queries answered with outdated data because a bake was in progress.
+     *
+     * @return the number of stale results
+     */
+    public long staleResults() {
+        return this.staleResults.sum();
+    }
+
+    /**
+     * Get the number of queries answered with the stale check default because nothing
+     * had been baked for a subject yet.
+     *
+     * @return the number of default results
+     */
+    public long defaultResults() {
+        return this.defaultResults.sum();
+    }
+
+    /**
+     * Get statistics for this cache, including hits, misses, and evictions.
+     *
+     * @return the current statistics
+     */
+    public CacheStats stats() {
+        return this.cache.synchronous().stats();
+    }
+
+    CompletableFuture<BakedSubjectData> get(final CalculatedSubjectImpl<?> subject, final Set<ContextValue<?>> contexts) {
+        final int generation = subject.generation();
+        // the map view does not record statistics, so hits are recorded here and misses by the cache
+        final @Nullable CompletableFuture<BakedSubjectData> cached = this.cache.asMap().get(new Key(subject, generation, contexts));
+        if (cached != null && !expired(cached)) {
+            this.stats.recordHits(1);
+            return cached;
+        }
+
+        // only keys that are kept need an interned context set
+        final Key key = new Key(subject, generation, ContextSet.of(contexts));
+        if (cached != null) {
+            // a time context has started or stopped matching since this was baked
+            this.cache.asMap().remove(key, cached);
+        }
+        return this.cache.get(key, this::bake);
+    }
+
+    private static boolean expired(final CompletableFuture<BakedSubjectData> result) {
+        return result.isDone() && !result.isCompletedExceptionally() && result.join().validUntil() <= System.currentTimeMillis();
+    }
+
+    private CompletableFuture<BakedSubjectData> bake(final Key key, final Executor executor) {
+        this.subjectKeys.computeIfAbsent(key.subject, k -> ConcurrentHashMap.newKeySet()).add(key);
+        final CompletableFuture<BakedSubjectData> result = key.subject.bake(key.contexts);
+        if (this.staleDefault != null) {
+            result.thenAccept(data -> this.latest.put(Key.latest(key.subject, key.contexts), data));
+        }
+        return result;
+    }
+
+    /**
+     * Get baked data for a query.
+     *
+     * <p>If stale checks are enabled, this will never wait for a bake to complete. Instead, the
+     * most recent data for the subject is returned, or the stale check default if there is none.</p>
+     *
+     * @param subject the subject to query
+     * @param contexts the contexts to query in, which must not be modified during the query
+     * @return baked data
+     */
+    BakedSubjectData query(final CalculatedSubjectImpl<?> subject, final Set<ContextValue<?>> contexts) {
+        final CompletableFuture<BakedSubjectData> result = get(subject, contexts);
+        final @Nullable BakedSubjectData staleDefault = this.staleDefault;
+        if (staleDefault == null || result.isDone()) {
+            return result.join();
+        }
+
+        final @Nullable BakedSubjectData stale = this.latest.getIfPresent(Key.latest(subject, contexts));
+        if (stale != null) {
+            this.staleResults.increment();
+            return stale;
+        }
+        this.defaultResults.increment();
+        return staleDefault;
+    }
+
+    /**
+     * Remove every entry of a subject from an older generation, returning the data
+     * that was current in that generation, by context set.
+     *
+     * <p>The subject's generation must already have been increased, so no more
+     * entries are added for {@code generation}.</p>
+     *
+     * @param subject the subject
+     * @param generation the generation being discarded
+     * @return the data that was cached for the discarded generation
+     */
+    Map<ContextSet, CompletableFuture<BakedSubjectData>> invalidate(final CalculatedSubjectImpl<?> subject, final int generation) {
+        final @Nullable Set<Key> keys = this.subjectKeys.get(subject);
+        if (keys == null || keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final Map<ContextSet, CompletableFuture<BakedSubjectData>> ret = new HashMap<>();
+        for (final Key key : keys) {
+            if (key.generation > generation) {
+                continue;
+            }
+            final @Nullable CompletableFuture<BakedSubjectData> value = this.cache.asMap().remove(key);
+            keys.remove(key);
+            if (value != null && key.generation == generation) {
+                ret.put(ContextSet.of(key.contexts), value);
+            }
+        }
+        return ret;
+    }
+
+    private void forget(final Key key) {
+        final @Nullable Set<Key> keys = this.subjectKeys.get(key.subject);
+        // the same key may have been cached again since it was removed
+        if (keys != null && !this.cache.asMap().containsKey(key)) {
+            keys.remove(key);
+        }
+    }
+
+    static final class Key {
+        private static final int ANY_VERSION = -1;
+
+        final CalculatedSubjectImpl<?> subject;
+        final int generation;
+        final Set<ContextValue<?>> contexts; // an interned context set for every stored key
+
+        Key(final CalculatedSubjectImpl<?> subject, final int generation, final Set<ContextValue<?>> contexts) {
+            this.subject = subject;
+            this.generation = generation;
+            this.contexts = contexts;
+        }
+
+        /**
+         * Create a key for the most recent data of a subject, independent of generation.
+         *
+         * @param subject the subject
+         * @param contexts the contexts
+         * @return a new key
+         */
+        static Key latest(final CalculatedSubjectImpl<?> subject, final Set<ContextValue<?>> contexts) {
+            return new Key(subject, ANY_VERSION, contexts);
+        }
+
+        @Override
+        public boolean equals(final @Nullable Object other) {
+            if (this == other) return true;
+            if (!(other instanceof Key)) return false;
+
+            final Key that = (Key) other;
+            return this.subject == that.subject
+                && this.generation == that.generation
+                && this.contexts.equals(that.contexts);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(this.subject);
+            result = 31 * result + this.generation;
+            result = 31 * result + this.contexts.hashCode();
+            return result;
+        }
+    }
+}
@@ -31,14 +31,16 @@ final class BakedSubjectData {
     private final NodeTree permissions;
     private final List<SubjectRef<?>> parents;
     private final Map<String, String> options;
+    private final long validUntil;
 
-    BakedSubjectData(final NodeTree permissions, final List<SubjectRef<?>> parents, final Map<String, String> options) {
+    BakedSubjectData(final NodeTree permissions, final List<SubjectRef<?>> parents, final Map<String, String> options, final long validUntil) {
         requireNonNull(permissions, "permissions");
         requireNonNull(parents, "parents");
         requireNonNull(options, "options");
         this.permissions = permissions;
         this.parents = parents;
         this.options = options;
+        this.validUntil = validUntil;
     }
 
     public NodeTree permissions() {
@@ -53,6 +55,31 @@ final class BakedSubjectData {
         return this.options;
     }
 
+    /**
+     * Get the time this data stops being valid because a time context it was baked with
+     * starts or stops matching.
+     *
+     * @return the time, in epoch milliseconds, or {@link Long#MAX_VALUE} for data that stays valid
+     */
+    long validUntil() {
+        return this.validUntil;
+    }
+
+    /**
+     * Estimate the memory used by this data, in bytes.
+     *
+     * <p>Permission trees may be shared between subjects, but are counted in full here.</p>
+     *
+     * @return the estimated size
+     */
+    int estimatedSize() {
+        long size = 64 + 24L * this.permissions.size() + 16L * this.parents.size();
+        for (final Map.Entry<String, String> option : this.options.entrySet()) {
+            size += 64 + 2L * (option.getKey().length() + option.getValue().length());
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
     @Override
     public boolean equals(final Object other) {
         if (this == other) return true;
@@ -18,20 +18,26 @@ package ca.stellardrift.permissionsex.impl.subject;
 
 import ca.stellardrift.permissionsex.impl.PermissionsEx;
 import ca.stellardrift.permissionsex.context.ContextDefinition;
+import ca.stellardrift.permissionsex.context.ContextSet;
 import ca.stellardrift.permissionsex.context.ContextValue;
-import ca.stellardrift.permissionsex.impl.util.PCollections;
 import ca.stellardrift.permissionsex.subject.CalculatedSubject;
 import ca.stellardrift.permissionsex.subject.ImmutableSubjectData;
 import ca.stellardrift.permissionsex.subject.SubjectRef;
+import ca.stellardrift.permissionsex.impl.jfr.EngineEvents;
+import ca.stellardrift.permissionsex.impl.jfr.FlightEvent;
+import ca.stellardrift.permissionsex.impl.context.TimeContextDefinition;
+import ca.stellardrift.permissionsex.impl.logging.ProfilingPermissionCheckNotifier;
 import ca.stellardrift.permissionsex.impl.util.CachingValue;
+import ca.stellardrift.permissionsex.metrics.Timer;
 import ca.stellardrift.permissionsex.util.NodeTree;
-import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
-import com.github.benmanes.caffeine.cache.Caffeine;
+import ca.stellardrift.permissionsex.util.PermissionKey;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.spongepowered.configurate.BasicConfigurationNode;
 import org.spongepowered.configurate.ConfigurationNode;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -41,7 +47,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
@@ -54,9 +60,10 @@ public class CalculatedSubjectImpl<I> implements Consumer<ImmutableSubjectData>,
     private @MonotonicNonNull ToDataSubjectRefImpl<I> ref;
     private @MonotonicNonNull ToDataSubjectRefImpl<I> transientRef;
 
-    private final AsyncLoadingCache<Set<ContextValue<?>>, BakedSubjectData> data;
+    private final AtomicInteger generation = new AtomicInteger();
     private final Set<Consumer<CalculatedSubject>> updateListeners = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    private @MonotonicNonNull CachingValue<Set<ContextValue<?>>> activeContexts;
+    private final Set<PermissionListener> permissionListeners = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private @MonotonicNonNull CachingValue<ContextSet> activeContexts;
 
     CalculatedSubjectImpl(
             final SubjectDataBaker baker,
@@ -65,11 +72,6 @@ public class CalculatedSubjectImpl<I> implements Consumer<ImmutableSubjectData>,
         this.baker = baker;
         this.identifier = identifier;
         this.type = type;
-        this.data = Caffeine.newBuilder()
-                .maximumSize(32)
-                .expireAfterAccess(1, TimeUnit.MINUTES)
-                .executor(type.engine().asyncExecutor())
-                .buildAsync((key, executor) -> this.baker.bake(CalculatedSubjectImpl.this, key));
     }
 
     void initialize(ToDataSubjectRefImpl<I> persistentRef, ToDataSubjectRefImpl<I> transientRef) {
@@ -78,9 +80,11 @@ public class CalculatedSubjectImpl<I> implements Consumer<ImmutableSubjectData>,
         this.activeContexts = CachingValue.timeBased(50L, () -> {
             Set<ContextValue<?>> acc = new HashSet<>();
             for (ContextDefinition<?> contextDefinition : getManager().registeredContextTypes()) {
-                handleAccumulateSingle(contextDefinition, acc);
+                if (!(contextDefinition instanceof TimeContextDefinition)) { // matched against the current time while baking instead
+                    handleAccumulateSingle(contextDefinition, acc);
+                }
             }
-            return acc;
+            return ContextSet.of(acc);
         });
     }
 
@@ -101,12 +105,37 @@ public class CalculatedSubjectImpl<I> implements Consumer<ImmutableSubjectData>,
     /**
      * Get the calculated data for a specific context set
      *
+     * <p>If stale checks are enabled, this may return outdated data rather than wait
+     * for the subject to be baked.</p>
+     *
      * @param contexts The contexts to get data in. These will be processed for combinations
      * @return The baked subject data
      */
     private BakedSubjectData getData(Set<ContextValue<?>> contexts) {
         Objects.requireNonNull(contexts, "contexts");
-        return data.synchronous().get(PCollections.asSet(contexts));
+        return getManager().bakedDataCache().query(this, contexts);
+    }
+
+    CompletableFuture<BakedSubjectData> bake(final Set<ContextValue<?>> contexts) {
+        final @Nullable ProfilingPermissionCheckNotifier profiler = getManager().profiler();
+        final Timer timer = this.type.bakeTimer();
+        final long start = System.nanoTime();
+        return this.baker.bake(this, contexts).whenComplete((data, err) -> {
+            final long elapsed = System.nanoTime() - start;
+            timer.record(elapsed);
+            if (profiler != null) {
+                profiler.recordBakeTime(this.identifier, elapsed);
+            }
+        });
+    }
+
+    /**
+     * The generation of this subject's baked data, increased whenever it is invalidated.
+     *
+     * @return the current generation
+     */
+    int generation() {
+        return this.generation.get();
     }
 
     @Override
@@ -126,20 +155,12 @@ public class CalculatedSubjectImpl<I> implements Consumer<ImmutableSubjectData>,
         return parents;
     }
 
-    /**
-     * Contexts that have been queried recently enough to still be cached
-     * @return A set of context sets that are in the lookup cache
-     */
-    private Set<Set<ContextValue<?>>> getCachedContexts() {
-        return data.synchronous().asMap().keySet();
-    }
-
     @Override
-    public Set<ContextValue<?>> activeContexts() {
+    public ContextSet activeContexts() {
         if (this.activeContexts == null) {
             throw new IllegalStateException("This subject has not yet been initialized! This is normally done before the future provided by PEX completes.");
         }
-        return new HashSet<>(this.activeContexts.get());
+        return this.activeContexts.get();
     }
 
     @Override
@@ -157,16 +178,91 @@ public class CalculatedSubjectImpl<I> implements Consumer<ImmutableSubjectData>,
 
     @Override
     public int permission(Set<ContextValue<?>> contexts, String permission) {
-        int ret = permissions(contexts).get(Objects.requireNonNull(permission, "permission"));
-        if (ret == 0) {
-            if (this.containingType().type().undefinedPermissionValue(this.identifier.identifier())) {
-                ret = 1;
-            }
+        return checkPermission(contexts, Objects.requireNonNull(permission, "permission"), null);
+    }
+
+    @Override
+    public int permission(Set<ContextValue<?>> contexts, PermissionKey permission) {
+        Objects.requireNonNull(permission, "permission");
+        return checkPermission(contexts, permission.permission(), permission);
+    }
+
+    /**
+     * Check a single permission, by its pre-resolved key if one is available.
+     *
+     * @param contexts the contexts to check in
+     * @param permission the permission
+     * @param key the key for {@code permission}, if the caller has one
+     * @return the permission value
+     */
+    private int checkPermission(final Set<ContextValue<?>> contexts, final String permission, final @Nullable PermissionKey key) {
+        final @Nullable ProfilingPermissionCheckNotifier profiler = getManager().profiler();
+        final long start = profiler == null ? 0 : System.nanoTime();
+        final FlightEvent.Span event = EngineEvents.PERMISSION_CHECK.beginSampled(EngineEvents.PERMISSION_CHECK_SAMPLE_RATE);
+        final NodeTree tree = permissions(contexts);
+        final int ret = undefinedValue(key == null ? tree.get(permission) : tree.get(key));
+        if (profiler != null) {
+            profiler.recordCheckTime(this.identifier, System.nanoTime() - start);
         }
+        recordCheck(event, contexts, permission, ret);
         getManager().getNotifier().onPermissionCheck(identifier(), contexts, permission, ret);
         return ret;
     }
 
+    /**
+     * Get the value of a permission without reporting the check.
+     *
+     * <p>The caller is responsible for notifying the engine's permission check notifier.</p>
+     *
+     * @param contexts the contexts to check in
+     * @param permission the permission
+     * @return the permission value
+     */
+    int permissionUnreported(final Set<ContextValue<?>> contexts, final PermissionKey permission) {
+        return undefinedValue(permissions(contexts).get(permission));
+    }
+
+    private int undefinedValue(final int value) {
+        if (value == 0 && this.containingType().type().undefinedPermissionValue(this.identifier.identifier())) {
+            return 1;
+        }
+        return value;
+    }
+
+    private void recordCheck(final FlightEvent.Span event, final Set<ContextValue<?>> contexts, final String permission, final int value) {
+        if (event.active()) {
+            event.set("subjectType", this.identifier.type().name())
+                .set("subject", this.identifier.serializedIdentifier())
+                .set("contexts", contexts.size())
+                .set("permission", permission)
+                .set("value", value)
+                .commit();
+        }
+    }
+
+    @Override
+    public int[] permissions(final Set<ContextValue<?>> contexts, final Collection<String> permissions) {
+        final @Nullable ProfilingPermissionCheckNotifier profiler = getManager().profiler();
+        final long start = profiler == null ? 0 : System.nanoTime();
+        final ContextSet contextSet = ContextSet.of(contexts);
+        final NodeTree tree = permissions(contextSet);
+        final boolean undefinedGranted = this.containingType().type().undefinedPermissionValue(this.identifier.identifier());
+        final List<String> checked = permissions instanceof List<?> ? (List<String>) permissions : new ArrayList<>(permissions);
+        final int[] ret = new int[checked.size()];
+        for (int i = 0; i < ret.length; i++) {
+            int value = tree.get(Objects.requireNonNull(checked.get(i), "permission"));
+            if (value == 0 && undefinedGranted) {
+                value = 1;
+            }
+            ret[i] = value;
+        }
+        if (profiler != null) {
+            profiler.recordCheckTime(this.identifier, System.nanoTime() - start);
+        }
+        getManager().getNotifier().onPermissionChecks(identifier(), contextSet, checked, ret);
+        return ret;
+    }
+
     @Override
     public boolean hasPermission(Set<ContextValue<?>> contexts, String permission) {
         return this.permission(contexts, permission) > 0;
@@ -216,21 +312,49 @@ public class CalculatedSubjectImpl<I> implements Consumer<ImmutableSubjectData>,
         updateListeners.remove(Objects.requireNonNull(listener));
     }
 
+    @Override
+    public void registerPermissionListener(PermissionListener listener) {
+        permissionListeners.add(Objects.requireNonNull(listener));
+    }
+
+    @Override
+    public void unregisterPermissionListener(PermissionListener listener) {
+        permissionListeners.remove(Objects.requireNonNull(listener));
+    }
+
+    /**
+     * Discard all baked data for this subject.
+     *
+     * <p>If anybody is listening for permission changes, the previously cached
+     * contexts are baked again right away so the changes can be delivered.</p>
+     */
+    private void invalidate() {
+        final BakedDataCache cache = getManager().bakedDataCache();
+        final Map<ContextSet, CompletableFuture<BakedSubjectData>> previous = cache.invalidate(this, this.generation.getAndIncrement());
+        if (this.permissionListeners.isEmpty()) {
+            return;
+        }
+
+        for (final Map.Entry<ContextSet, CompletableFuture<BakedSubjectData>> ent : previous.entrySet()) {
+            final @Nullable BakedSubjectData previousData = ent.getValue().getNow(null);
+            if (previousData == null) { // still baking, so nobody has seen these permissions yet
+                continue;
+            }
+            cache.get(this, ent.getKey()).thenAccept(newData -> {
+                final Map<String, Integer> changes = previousData.permissions().diff(newData.permissions());
+                if (!changes.isEmpty()) {
+                    this.permissionListeners.forEach(listener -> listener.permissionsChanged(this, ent.getKey(), changes));
+                }
+            });
+        }
+    }
+
     @Override
     public void accept(ImmutableSubjectData newData) {
-        data.synchronous().invalidateAll();
-        getManager().loadedSubjectTypes().stream()
-                .flatMap(type -> type.activeSubjects().stream())
-                .map(it -> (CalculatedSubjectImpl<?>) it)
-                .filter(subj -> {
-                    for (Set<ContextValue<?>> ent : subj.getCachedContexts()) {
-                        if (subj.parents(ent).contains(this.identifier)) {
-                            return true;
-                        }
-                    }
-                    return false;
-                })
-                .forEach(subj -> subj.data.synchronous().invalidateAll());
+        this.invalidate();
+        for (final CalculatedSubjectImpl<?> dependent : getManager().subjectDependents().dependents(this.identifier)) {
+            dependent.invalidate();
+        }
         updateListeners.forEach(listener -> listener.accept(this));
     }
 
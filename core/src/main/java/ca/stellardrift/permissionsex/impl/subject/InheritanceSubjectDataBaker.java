@@ -17,7 +17,10 @@
 package ca.stellardrift.permissionsex.impl.subject;
 
 import ca.stellardrift.permissionsex.impl.PermissionsEx;
+import ca.stellardrift.permissionsex.context.ContextSet;
 import ca.stellardrift.permissionsex.context.ContextValue;
+import ca.stellardrift.permissionsex.impl.jfr.EngineEvents;
+import ca.stellardrift.permissionsex.impl.jfr.FlightEvent;
 import ca.stellardrift.permissionsex.impl.util.PCollections;
 import ca.stellardrift.permissionsex.subject.ImmutableSubjectData;
 import ca.stellardrift.permissionsex.subject.Segment;
@@ -27,19 +30,19 @@ import ca.stellardrift.permissionsex.util.NodeTree;
 import ca.stellardrift.permissionsex.impl.util.Util;
 import ca.stellardrift.permissionsex.util.glob.GlobParseException;
 import ca.stellardrift.permissionsex.util.glob.Globs;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Multiset;
 import org.checkerframework.checker.nullness.qual.Nullable;
-import org.pcollections.PSet;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
@@ -50,6 +53,45 @@ class InheritanceSubjectDataBaker implements SubjectDataBaker {
     private static final int CIRCULAR_INHERITANCE_THRESHOLD = 3;
     static final SubjectDataBaker INSTANCE = new InheritanceSubjectDataBaker();
 
+    /**
+     * Subjects with the same parents usually bake to identical permissions, so
+     * share one copy of each distinct tree between them.
+     *
+     * <p>Only whole trees are shared, not identical subtrees of different trees.
+     * A frozen tree's hash is computed once while it is packed, so interning
+     * does not walk the tree again.</p>
+     */
+    private static final Interner<NodeTree> BAKED_PERMISSIONS = Interners.newWeakInterner();
+
+    /**
+     * Segments are immutable, so each one only has its globs expanded once,
+     * for as long as the segment is still in use.
+     */
+    private static final LoadingCache<Segment, ExpandedPermissions> EXPANDED_PERMISSIONS = Caffeine.newBuilder()
+            .weakKeys()
+            .build(ExpandedPermissions::of);
+
+    /**
+     * Subject data is immutable, so the contexts of its segments are only indexed once.
+     */
+    private static final LoadingCache<ImmutableSubjectData, SegmentContextIndex> SEGMENT_INDEXES = Caffeine.newBuilder()
+            .weakKeys()
+            .build(SegmentContextIndex::of);
+
+    /**
+     * Marks a permission that is not a valid glob, and is used as-is.
+     */
+    private static final String[] LITERAL = new String[0];
+
+    /**
+     * The same permissions are set in many segments, and are seen again whenever
+     * a segment changes, so share the result of parsing each one.
+     */
+    private static final LoadingCache<String, String[]> PARSED_GLOBS = Caffeine.newBuilder()
+            .maximumSize(8192)
+            .recordStats()
+            .build(InheritanceSubjectDataBaker::parseGlob);
+
     private InheritanceSubjectDataBaker() {
     }
 
@@ -59,42 +101,286 @@ class InheritanceSubjectDataBaker implements SubjectDataBaker {
         final List<SubjectRef<?>> parents = new ArrayList<>();
         final Map<String, String> options = new HashMap<>();
         int defaultValue;
+        long validUntil = Long.MAX_VALUE; // the next time a time context visited changes
+        final List<DataSource<?>> sources = new ArrayList<>(); // only tracked for partial bakes
 
         // State objects
         final CalculatedSubjectImpl<?> base;
         final PermissionsEx<?> pex;
-        final Set<ContextValue<?>> activeContexts;
+        final ContextSet activeContexts;
+        final long time; // the time time contexts are matched against, in epoch milliseconds
+        final boolean partial;
+        final boolean parallel;
+        final Map<PartialKey, PartialBake> checkedPartials; // partial bakes already known to be current, shared by both attempts at a bake
+        final @Nullable List<SubjectRef<?>> circularSubjects; // reported once a bake on the calling thread completes, so an abandoned attempt reports nothing
 
-        BakeState(CalculatedSubjectImpl<?> base, Set<ContextValue<?>> activeContexts) {
+        BakeState(CalculatedSubjectImpl<?> base, ContextSet activeContexts, Map<PartialKey, PartialBake> checkedPartials, @Nullable List<SubjectRef<?>> circularSubjects) {
+            this(base, activeContexts, System.currentTimeMillis(), false, checkedPartials, circularSubjects);
+        }
+
+        private BakeState(CalculatedSubjectImpl<?> base, ContextSet activeContexts, long time, boolean partial, Map<PartialKey, PartialBake> checkedPartials, @Nullable List<SubjectRef<?>> circularSubjects) {
             this.base = base;
             this.activeContexts = activeContexts;
+            this.time = time;
             this.pex = base.getManager();
+            this.partial = partial;
+            this.parallel = !partial && this.pex.config().isParallelBakingEnabled();
+            this.checkedPartials = checkedPartials;
+            this.circularSubjects = circularSubjects;
+        }
+
+        /**
+         * Create the state for a partial bake needed by this bake.
+         *
+         * @return a new bake state
+         */
+        BakeState partialState() {
+            return new BakeState(this.base, this.activeContexts, this.time, true, this.checkedPartials, this.circularSubjects == null ? null : new ArrayList<>());
+        }
+
+        void circularInheritance(final SubjectRef<?> subject) {
+            if (this.circularSubjects != null) {
+                this.circularSubjects.add(subject);
+            } else {
+                this.pex.logger().warn(Messages.BAKER_ERROR_CIRCULAR_INHERITANCE.tr(this.base.identifier(), subject));
+            }
+        }
+
+        void reportCircularInheritance() {
+            if (this.circularSubjects != null) {
+                for (final SubjectRef<?> subject : this.circularSubjects) {
+                    this.pex.logger().warn(Messages.BAKER_ERROR_CIRCULAR_INHERITANCE.tr(this.base.identifier(), subject));
+                }
+                this.circularSubjects.clear();
+            }
+        }
+    }
+
+    /**
+     * Identifies the data contributed by one inherited subject.
+     *
+     * <p>Inheritance levels past the first only differ in whether permissions
+     * excluded from inheritance apply, so every deeper level shares a key.
+     * Time contexts are not part of the key, since each partial bake knows
+     * until when it is valid.</p>
+     */
+    static final class PartialKey {
+        private final SubjectRef<?> subject;
+        private final ContextSet contexts;
+        private final int inheritanceLevel;
+
+        PartialKey(final SubjectRef<?> subject, final ContextSet contexts, final int inheritanceLevel) {
+            this.subject = subject;
+            this.contexts = contexts;
+            this.inheritanceLevel = Math.min(inheritanceLevel, 2);
+        }
+
+        @Override
+        public boolean equals(final @Nullable Object other) {
+            if (this == other) return true;
+            if (!(other instanceof PartialKey)) return false;
+
+            final PartialKey that = (PartialKey) other;
+            return this.inheritanceLevel == that.inheritanceLevel
+                && this.subject.equals(that.subject)
+                && this.contexts.equals(that.contexts);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.subject.hashCode();
+            result = 31 * result + this.contexts.hashCode();
+            result = 31 * result + this.inheritanceLevel;
+            return result;
+        }
+    }
+
+    /**
+     * The data read for a single subject while baking.
+     *
+     * @param <I> identifier type
+     */
+    private static final class DataSource<I> {
+        private final SubjectRef<I> subject;
+        private final ImmutableSubjectData persistent;
+        private final ImmutableSubjectData transientData;
+
+        DataSource(final SubjectRef<I> subject, final ImmutableSubjectData persistent, final ImmutableSubjectData transientData) {
+            this.subject = subject;
+            this.persistent = persistent;
+            this.transientData = transientData;
+        }
+
+        /**
+         * Check whether the data read is still the subject's current data.
+         *
+         * <p>This also registers the subject being baked for updates to this data,
+         * just like reading the data for a full bake would.</p>
+         *
+         * @param state the bake that wants to reuse the data
+         * @return whether the data is current
+         */
+        boolean isCurrent(final BakeState state) {
+            final SubjectTypeCollectionImpl<I> type = state.pex.subjects(this.subject.type());
+            final CompletableFuture<ImmutableSubjectData> persistent = type.persistentData().data(this.subject.identifier(), state.base);
+            final CompletableFuture<ImmutableSubjectData> transientData = type.transientData().data(this.subject.identifier(), state.base);
+            return persistent.getNow(null) == this.persistent && transientData.getNow(null) == this.transientData;
+        }
+    }
+
+    /**
+     * The flattened data of an inherited subject and all of its own parents.
+     *
+     * <p>Merging a partial bake into a bake in progress gives the same result as visiting
+     * the inherited subject directly, since every merge rule only keeps the first
+     * value seen or the value with the greatest magnitude.</p>
+     */
+    static final class PartialBake {
+        private final Map<String, Integer> permissions;
+        private final List<SubjectRef<?>> parents;
+        private final Map<String, String> options;
+        private final int defaultValue;
+        private final long validUntil;
+        private final List<DataSource<?>> sources;
+
+        PartialBake(final BakeState state) {
+            this.permissions = state.combinedPermissions;
+            this.parents = state.parents;
+            this.options = state.options;
+            this.defaultValue = state.defaultValue;
+            this.validUntil = state.validUntil;
+            this.sources = state.sources;
+        }
+
+        boolean isCurrent(final BakeState state) {
+            if (state.time >= this.validUntil) {
+                return false;
+            }
+            for (final DataSource<?> source : this.sources) {
+                if (!source.isCurrent(state)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void mergeInto(final BakeState state) {
+            for (final Map.Entry<String, Integer> ent : this.permissions.entrySet()) {
+                putPermIfNecessary(state, ent.getKey(), ent.getValue());
+            }
+            state.parents.addAll(this.parents);
+            for (final Map.Entry<String, String> ent : this.options.entrySet()) {
+                state.options.putIfAbsent(ent.getKey(), ent.getValue());
+            }
+            if (Math.abs(this.defaultValue) > Math.abs(state.defaultValue)) {
+                state.defaultValue = this.defaultValue;
+            }
+            state.validUntil = Math.min(state.validUntil, this.validUntil);
+            for (final DataSource<?> source : this.sources) {
+                state.pex.subjectDependents().add(source.subject, state.base);
+            }
         }
     }
 
-    private static CompletableFuture<Set<ContextValue<?>>> processContexts(PermissionsEx<?> pex, Set<ContextValue<?>> rawContexts) {
-        return pex.contextInheritance().thenApply(inheritance -> {
-            // Step one: calculate context inheritance
-            final Queue<ContextValue<?>> inProgressContexts = new ArrayDeque<>(rawContexts);
-            PSet<ContextValue<?>> contexts = PCollections.set();
-            @Nullable ContextValue<?> context;
-            while ((context = inProgressContexts.poll()) != null) {
-                if (!contexts.contains(context)) {
-                    contexts = contexts.plus(context);
-                    inProgressContexts.addAll(inheritance.parents(context));
+    /**
+     * The permissions of a segment with any globs expanded.
+     *
+     * <p>Permissions excluded from inheritance with a {@code #} prefix are stored
+     * after every other permission, so callers can stop early when visiting
+     * inherited data.</p>
+     */
+    private static final class ExpandedPermissions {
+        final String[] nodes;
+        final int[] values;
+        final int inheritableCount;
+
+        private ExpandedPermissions(final String[] nodes, final int[] values, final int inheritableCount) {
+            this.nodes = nodes;
+            this.values = values;
+            this.inheritableCount = inheritableCount;
+        }
+
+        static ExpandedPermissions of(final Segment segment) {
+            final List<String> inheritable = new ArrayList<>();
+            final List<Integer> inheritableValues = new ArrayList<>();
+            final List<String> local = new ArrayList<>();
+            final List<Integer> localValues = new ArrayList<>();
+            for (final Map.Entry<String, Integer> ent : segment.permissions().entrySet()) {
+                String perm = ent.getKey();
+                List<String> nodes = inheritable;
+                List<Integer> values = inheritableValues;
+                if (perm.startsWith("#")) { // Prefix to exclude from inheritance
+                    perm = perm.substring(1);
+                    nodes = local;
+                    values = localValues;
+                }
+
+                final String[] matches = PARSED_GLOBS.get(perm);
+                if (matches == LITERAL) {
+                    nodes.add(perm);
+                    values.add(ent.getValue());
+                } else {
+                    for (final String matched : matches) {
+                        nodes.add(matched);
+                        values.add(ent.getValue());
+                    }
                 }
             }
 
-            return contexts;
-        });
+            final int count = inheritable.size() + local.size();
+            final String[] nodes = new String[count];
+            final int[] values = new int[count];
+            for (int i = 0; i < count; i++) {
+                final boolean isLocal = i >= inheritable.size();
+                nodes[i] = isLocal ? local.get(i - inheritable.size()) : inheritable.get(i);
+                values[i] = isLocal ? localValues.get(i - inheritable.size()) : inheritableValues.get(i);
+            }
+            return new ExpandedPermissions(nodes, values, inheritable.size());
+        }
+    }
+
+    private static String[] parseGlob(final String permission) {
+        try {
+            final List<String> matches = new ArrayList<>();
+            for (final String matched : Globs.parse(permission)) {
+                matches.add(matched);
+            }
+            return matches.toArray(new String[0]);
+        } catch (final GlobParseException e) { // If the permission is not a valid glob, assume it's a literal
+            return LITERAL;
+        }
+    }
+
+    /**
+     * Get statistics for the cache of parsed permission globs.
+     *
+     * @return the current statistics
+     */
+    static CacheStats globCacheStats() {
+        return PARSED_GLOBS.stats();
+    }
+
+    private static CompletableFuture<ContextSet> processContexts(PermissionsEx<?> pex, Set<ContextValue<?>> rawContexts) {
+        // Step one: calculate context inheritance
+        return pex.contextInheritanceClosure().thenApply(closure -> closure.expand(rawContexts));
     }
 
     @Override
     public CompletableFuture<BakedSubjectData> bake(CalculatedSubjectImpl<?> data, Set<ContextValue<?>> activeContexts) {
+        final FlightEvent.Span event = EngineEvents.BAKE.begin();
+        final CompletableFuture<ContextSet> contexts = processContexts(data.getManager(), activeContexts);
+        final Map<PartialKey, PartialBake> checkedPartials = new HashMap<>();
+        if (contexts.isDone() && !contexts.isCompletedExceptionally()) {
+            final @Nullable BakeState state = bakeNow(data, contexts.join(), checkedPartials);
+            if (state != null) {
+                return CompletableFuture.completedFuture(recordBake(event, data, activeContexts, toBakedData(state)));
+            }
+        }
+
         final SubjectRef<?> subject = data.identifier();
-        return processContexts(data.getManager(), activeContexts)
+        return contexts
                 .thenCompose(processedContexts -> {
-                    final BakeState state = new BakeState(data, processedContexts);
+                    final BakeState state = new BakeState(data, processedContexts, checkedPartials, null);
 
                     final Multiset<SubjectRef<?>> visitedSubjects = HashMultiset.create();
                     CompletableFuture<Void> ret = visitSubject(state, subject, visitedSubjects, 0);
@@ -111,25 +397,285 @@ class InheritanceSubjectDataBaker implements SubjectDataBaker {
 
                     final SubjectRef<SubjectType<?>> defIdentifier = data.data().getCache().getDefaultIdentifier();
                     if (!subject.equals(defIdentifier)) {
-                        ret = ret.thenCompose(none -> visitSubject(state, defIdentifier, visitedSubjects, 1))
-                            .thenCompose(none -> visitSubject(state, SubjectRef.subject(data.getManager().defaultsType(), data.getManager().defaultsType()), visitedSubjects, 2)); // Force in global defaults
+                        ret = ret.thenCompose(none -> visitInherited(state, defIdentifier, visitedSubjects, 1))
+                            .thenCompose(none -> visitInherited(state, SubjectRef.subject(data.getManager().defaultsType(), data.getManager().defaultsType()), visitedSubjects, 2)); // Force in global defaults
                     }
                     return ret.thenApply(none -> state);
 
-                }).thenApply(state -> new BakedSubjectData(NodeTree.of(state.combinedPermissions, state.defaultValue), PCollections.asVector(state.parents), PCollections.asMap(state.options)));
+                }).thenApply(state -> recordBake(event, data, activeContexts, toBakedData(state)));
+    }
+
+    private static BakedSubjectData recordBake(final FlightEvent.Span event, final CalculatedSubjectImpl<?> subject, final Set<ContextValue<?>> contexts, final BakedSubjectData result) {
+        if (event.active()) {
+            event.set("subjectType", subject.identifier().type().name())
+                .set("subject", subject.identifier().serializedIdentifier())
+                .set("contexts", contexts.size())
+                .set("parents", result.parents().size())
+                .set("estimatedSize", result.estimatedSize())
+                .commit();
+        }
+        return result;
+    }
+
+    private static BakedSubjectData toBakedData(final BakeState state) {
+        return new BakedSubjectData(BAKED_PERMISSIONS.intern(NodeTree.of(state.combinedPermissions, state.defaultValue).freeze()), PCollections.asVector(state.parents), PCollections.asMap(state.options), state.validUntil);
+    }
+
+    /**
+     * Bake a subject on the calling thread, if every piece of data needed is already loaded.
+     *
+     * <p>This visits subjects in the same order as {@link #bake(CalculatedSubjectImpl, Set)},
+     * without creating a future for every step. If the bake has to be finished
+     * asynchronously instead, any partial bakes found to be current are kept in
+     * {@code checkedPartials} to be merged without checking them again. Circular
+     * inheritance is only reported for the parts of this attempt that are kept,
+     * so subjects visited again asynchronously are not reported twice.</p>
+     *
+     * @param data the subject to bake
+     * @param processedContexts the active contexts, including inherited contexts
+     * @param checkedPartials the partial bakes already known to be current
+     * @return the bake state, or {@code null} if some data must be loaded first
+     */
+    private @Nullable BakeState bakeNow(final CalculatedSubjectImpl<?> data, final ContextSet processedContexts, final Map<PartialKey, PartialBake> checkedPartials) {
+        final SubjectRef<?> subject = data.identifier();
+        final BakeState state = new BakeState(data, processedContexts, checkedPartials, new ArrayList<>());
+        final Multiset<SubjectRef<?>> visitedSubjects = HashMultiset.create();
+        if (!visitSubjectNow(state, subject, visitedSubjects, 0)) {
+            return null;
+        }
+
+        final SubjectType<SubjectType<?>> fallbackType = data.getManager().fallbacksType();
+        if (state.parents.isEmpty()
+            && state.combinedPermissions.isEmpty()
+            && state.options.isEmpty()
+            && state.defaultValue == 0
+            && !(subject.type().equals(fallbackType)
+                && subject.identifier().equals(fallbackType))) { // If we have no data, include the fallback subject
+            if (!visitSubjectNow(state, SubjectRef.subject(fallbackType, subject.type()), visitedSubjects, 0)) {
+                return null;
+            }
+        }
+
+        final SubjectRef<SubjectType<?>> defIdentifier = data.data().getCache().getDefaultIdentifier();
+        if (!subject.equals(defIdentifier)) {
+            if (!visitInheritedNow(state, defIdentifier, visitedSubjects, 1)
+                || !visitInheritedNow(state, SubjectRef.subject(data.getManager().defaultsType(), data.getManager().defaultsType()), visitedSubjects, 2)) { // Force in global defaults
+                return null;
+            }
+        }
+
+        state.reportCircularInheritance();
+        return state;
+    }
+
+    private boolean visitInheritedNow(BakeState state, SubjectRef<?> subject, Multiset<SubjectRef<?>> visitedSubjects, int inheritanceLevel) {
+        if (state.partial) {
+            return visitSubjectNow(state, subject, visitedSubjects, inheritanceLevel);
+        }
+
+        final PartialKey key = new PartialKey(subject, state.activeContexts, inheritanceLevel);
+        @Nullable PartialBake partial = checkedPartial(state, key);
+        if (partial == null) {
+            partial = partialBakeNow(state, key);
+            if (partial == null) {
+                return false;
+            }
+        }
+        state.checkedPartials.put(key, partial);
+        partial.mergeInto(state);
+        return true;
+    }
+
+    private <I> boolean visitSubjectNow(BakeState state, SubjectRef<I> subject, Multiset<SubjectRef<?>> visitedSubjects, int inheritanceLevel) {
+        if (visitedSubjects.count(subject) > CIRCULAR_INHERITANCE_THRESHOLD) {
+            state.circularInheritance(subject);
+            return true;
+        }
+        visitedSubjects.add(subject);
+        SubjectTypeCollectionImpl<I> type = state.pex.subjects(subject.type());
+        final @Nullable ImmutableSubjectData persistent = loaded(type.persistentData().data(subject.identifier(), state.base));
+        final @Nullable ImmutableSubjectData transientData = loaded(type.transientData().data(subject.identifier(), state.base));
+        if (persistent == null || transientData == null) {
+            return false;
+        }
+        if (state.partial) {
+            state.sources.add(new DataSource<>(subject, persistent, transientData));
+        } else {
+            state.pex.subjectDependents().add(subject, state.base);
+        }
+
+        for (Set<ContextValue<?>> combo : processContexts(persistent, transientData, state)) {
+            final ImmutableSubjectData first = type.type().transientHasPriority() ? transientData : persistent;
+            final ImmutableSubjectData second = type.type().transientHasPriority() ? persistent : transientData;
+            if (!visitSubjectSingleNow(state, first, combo, visitedSubjects, inheritanceLevel)
+                || !visitSubjectSingleNow(state, second, combo, visitedSubjects, inheritanceLevel)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean visitSubjectSingleNow(
+            BakeState state,
+            ImmutableSubjectData data,
+            Set<ContextValue<?>> activeCombo,
+            Multiset<SubjectRef<?>> visitedSubjects,
+            int inheritanceLevel) {
+        final Segment active = data.segment(activeCombo);
+        visitSingle(state, active, inheritanceLevel);
+        if (state.parallel && active.parents().size() > 1 && !partialsCurrent(state, active.parents(), inheritanceLevel + 1)) {
+            return false; // leave the parents to be baked in parallel asynchronously
+        }
+        for (final SubjectRef<?> parent : active.parents()) {
+            if (!visitInheritedNow(state, parent, visitedSubjects, inheritanceLevel + 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the result of a data lookup, if it has finished without error.
+     *
+     * @param data the data future
+     * @return the loaded data, or {@code null} if it is not yet available
+     */
+    private static @Nullable ImmutableSubjectData loaded(final CompletableFuture<ImmutableSubjectData> data) {
+        return data.isDone() && !data.isCompletedExceptionally() ? data.join() : null;
+    }
+
+    /**
+     * Visit a subject inherited by the subject being baked, reusing its flattened
+     * data from an earlier bake if none of that data has changed since.
+     *
+     * <p>Subjects are visited directly while a partial bake is itself in progress, so
+     * each partial bake is calculated the same way regardless of which subject
+     * first needed it.</p>
+     */
+    private CompletableFuture<Void> visitInherited(BakeState state, SubjectRef<?> subject, Multiset<SubjectRef<?>> visitedSubjects, int inheritanceLevel) {
+        if (state.partial) {
+            return visitSubject(state, subject, visitedSubjects, inheritanceLevel);
+        }
+
+        final PartialKey key = new PartialKey(subject, state.activeContexts, inheritanceLevel);
+        final @Nullable PartialBake existing = checkedPartial(state, key);
+        if (existing != null) {
+            existing.mergeInto(state);
+            return Util.emptyFuture();
+        }
+        return partialBake(state, key).thenAccept(partial -> partial.mergeInto(state));
+    }
+
+    private static @Nullable PartialBake cachedPartial(final BakeState state, final PartialKey key) {
+        final @Nullable PartialBake existing = state.pex.partialBakes().get(key);
+        return existing != null && existing.isCurrent(state) ? existing : null;
+    }
+
+    /**
+     * Get a current partial bake, preferring one already checked by this bake.
+     *
+     * @param state the bake in progress
+     * @param key the partial bake to look up
+     * @return the partial bake, or {@code null} if it must be calculated
+     */
+    private static @Nullable PartialBake checkedPartial(final BakeState state, final PartialKey key) {
+        final @Nullable PartialBake checked = state.checkedPartials.get(key);
+        return checked != null && state.time < checked.validUntil ? checked : cachedPartial(state, key);
+    }
+
+    /**
+     * Check whether every parent has a current partial bake, so none of them would be
+     * worth baking in parallel.
+     *
+     * <p>Any partial bakes found are kept in the bake state, so they are not checked
+     * again when merged.</p>
+     *
+     * @param state the bake in progress
+     * @param parents the parents to check
+     * @param inheritanceLevel the inheritance level of the parents
+     * @return whether every parent has a current partial bake
+     */
+    private static boolean partialsCurrent(final BakeState state, final List<? extends SubjectRef<?>> parents, final int inheritanceLevel) {
+        for (final SubjectRef<?> parent : parents) {
+            final PartialKey key = new PartialKey(parent, state.activeContexts, inheritanceLevel);
+            final @Nullable PartialBake partial = checkedPartial(state, key);
+            if (partial == null) {
+                return false;
+            }
+            state.checkedPartials.put(key, partial);
+        }
+        return true;
+    }
+
+    private CompletableFuture<PartialBake> partialBake(final BakeState state, final PartialKey key) {
+        final BakeState partialState = state.partialState();
+        return visitSubject(partialState, key.subject, HashMultiset.create(), key.inheritanceLevel).thenApply(none -> {
+            final PartialBake partial = new PartialBake(partialState);
+            state.pex.partialBakes().put(key, partial);
+            return partial;
+        });
+    }
+
+    private @Nullable PartialBake partialBakeNow(final BakeState state, final PartialKey key) {
+        final BakeState partialState = state.partialState();
+        if (!visitSubjectNow(partialState, key.subject, HashMultiset.create(), key.inheritanceLevel)) {
+            return null;
+        }
+        partialState.reportCircularInheritance(); // this partial bake will be reused rather than visited again
+        final PartialBake partial = new PartialBake(partialState);
+        state.pex.partialBakes().put(key, partial);
+        return partial;
+    }
+
+    /**
+     * Visit several parents at once, calculating their partial bakes on the engine's executor.
+     *
+     * <p>Parents are merged one at a time once every partial bake is available, so the
+     * result does not depend on which parent finishes first. If any partial bake
+     * fails, the returned future fails with the same error.</p>
+     *
+     * @param state the bake in progress
+     * @param parents the parents to visit
+     * @param inheritanceLevel the inheritance level of the parents
+     * @return a future completing once every parent has been merged
+     */
+    private CompletableFuture<Void> visitParentsInParallel(final BakeState state, final List<? extends SubjectRef<?>> parents, final int inheritanceLevel) {
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<PartialBake>[] partials = new CompletableFuture[parents.size()];
+        for (int i = 0; i < partials.length; i++) {
+            final PartialKey key = new PartialKey(parents.get(i), state.activeContexts, inheritanceLevel);
+            partials[i] = CompletableFuture.supplyAsync(() -> {
+                @Nullable PartialBake partial = checkedPartial(state, key);
+                if (partial == null) {
+                    partial = partialBakeNow(state, key);
+                }
+                return partial != null ? CompletableFuture.completedFuture(partial) : partialBake(state, key);
+            }, state.pex.asyncExecutor())
+                .thenCompose(partial -> partial);
+        }
+        return CompletableFuture.allOf(partials).thenRun(() -> {
+            for (final CompletableFuture<PartialBake> partial : partials) {
+                partial.join().mergeInto(state); // already complete
+            }
+        });
     }
 
     private <I> CompletableFuture<Void> visitSubject(BakeState state, SubjectRef<I> subject, Multiset<SubjectRef<?>> visitedSubjects, int inheritanceLevel) {
         if (visitedSubjects.count(subject) > CIRCULAR_INHERITANCE_THRESHOLD) {
-            state.pex.logger().warn(Messages.BAKER_ERROR_CIRCULAR_INHERITANCE.tr(state.base.identifier(), subject));
+            state.circularInheritance(subject);
             return Util.emptyFuture();
         }
         visitedSubjects.add(subject);
         SubjectTypeCollectionImpl<I> type = state.pex.subjects(subject.type());
         return type.persistentData().data(subject.identifier(), state.base).thenCombine(type.transientData().data(subject.identifier(), state.base), (persistent, transientData) -> {
             CompletableFuture<Void> ret = Util.emptyFuture();
+            if (state.partial) {
+                state.sources.add(new DataSource<>(subject, persistent, transientData));
+            } else {
+                state.pex.subjectDependents().add(subject, state.base);
+            }
 
-            for (Set<ContextValue<?>> combo : processContexts(persistent.activeContexts(), transientData.activeContexts(), state)) {
+            for (Set<ContextValue<?>> combo : processContexts(persistent, transientData, state)) {
                 if (type.type().transientHasPriority()) {
                     ret = visitSubjectSingle(state, transientData, ret, combo, visitedSubjects, inheritanceLevel);
                     ret = visitSubjectSingle(state, persistent, ret, combo, visitedSubjects, inheritanceLevel);
@@ -142,53 +688,28 @@ class InheritanceSubjectDataBaker implements SubjectDataBaker {
         }).thenCompose(res -> res);
     }
 
-    private List<PSet<ContextValue<?>>> processContexts(Set<? extends Set<ContextValue<?>>> possibilities, Set<? extends Set<ContextValue<?>>> transientPossibilities, BakeState state) {
-        List<PSet<ContextValue<?>>> ret = new ArrayList<>();
-        Set<PSet<ContextValue<?>>> seen = new HashSet<>(possibilities.size());
-        processSingleDataContexts(ret, seen, possibilities, state);
-        processSingleDataContexts(ret, seen, transientPossibilities, state);
-        ret.sort(Comparator.<Set<ContextValue<?>>>comparingInt(Set::size).reversed());
-        return ret;
-    }
-
     /**
-     * Add every context set used for a segment in this subject where for a given set,
-     * every context matches at least one of the active contexts provided for the query
+     * Get every context set used for a segment in either data object where, for a given set,
+     * every context matches at least one of the active contexts of the bake.
+     *
+     * <p>The bake is only valid until the next time a time context of either data object
+     * starts or stops matching.</p>
      *
-     * @param accum Accumulator of context sets
-     * @param possibilities The possible contexts provided by the subject data
-     * @param state The bake state
+     * @param persistent the persistent data of a subject
+     * @param transientData the transient data of a subject
+     * @param state the bake state
+     * @return applicable segment contexts, largest first
      */
-    private void processSingleDataContexts(List<PSet<ContextValue<?>>> accum, Set<PSet<ContextValue<?>>> seen, Set<? extends Set<ContextValue<?>>> possibilities, BakeState state) {
-        nextSegment: for (Set<ContextValue<?>> rawSegmentContexts : possibilities) {
-            final PSet<ContextValue<?>> segmentContexts = PCollections.asSet(rawSegmentContexts);
-            if (seen.contains(segmentContexts)) {
-                continue;
-            }
-            seen.add(segmentContexts);
-
-            for (ContextValue<?> value : segmentContexts) {
-                boolean matched = false;
-                for (ContextValue<?> possibility : state.activeContexts) {
-                    if (checkSingleContextMatch(value, possibility, state.pex)) {
-                        matched = true;
-                        break;
-                    }
-                }
-
-                if (!matched) {
-                    continue nextSegment;
-                }
-            }
-            accum.add(segmentContexts);
-        }
-    }
-
-
-    @SuppressWarnings("unchecked")
-    private <T> boolean checkSingleContextMatch(ContextValue<T> value, ContextValue<?> other, PermissionsEx<?> pex) {
-        return value.key().equals(other.key()) && value.tryResolve(pex)
-                && value.definition().matches(value, ((ContextValue<T>) other).getParsedValue(value.definition()));
+    private List<ContextSet> processContexts(ImmutableSubjectData persistent, ImmutableSubjectData transientData, BakeState state) {
+        final SegmentContextIndex persistentIndex = SEGMENT_INDEXES.get(persistent);
+        final SegmentContextIndex transientIndex = SEGMENT_INDEXES.get(transientData);
+        state.validUntil = Math.min(state.validUntil, Math.min(
+            persistentIndex.nextBoundary(state.activeContexts, state.pex, state.time),
+            transientIndex.nextBoundary(state.activeContexts, state.pex, state.time)));
+        return SegmentContextIndex.merge(
+            persistentIndex.applicable(state.activeContexts, state.pex, state.time),
+            transientIndex.applicable(state.activeContexts, state.pex, state.time)
+        );
     }
 
     private CompletableFuture<Void> visitSubjectSingle(
@@ -200,13 +721,16 @@ class InheritanceSubjectDataBaker implements SubjectDataBaker {
             int inheritanceLevel) {
         final Segment active = data.segment(activeCombo);
         initial = initial.thenRun(() -> visitSingle(state, active, inheritanceLevel));
+        if (state.parallel && active.parents().size() > 1) {
+            return initial.thenCompose(none -> visitParentsInParallel(state, active.parents(), inheritanceLevel + 1));
+        }
         for (final SubjectRef<?> parent : active.parents()) {
-            initial = initial.thenCompose(none -> visitSubject(state, parent, visitedSubjects, inheritanceLevel + 1));
+            initial = initial.thenCompose(none -> visitInherited(state, parent, visitedSubjects, inheritanceLevel + 1));
         }
         return initial;
     }
 
-    private void putPermIfNecessary(final BakeState state, final String perm, final int val) {
+    private static void putPermIfNecessary(final BakeState state, final String perm, final int val) {
         final Integer existing = state.combinedPermissions.get(perm);
         if (existing == null || Math.abs(val) > Math.abs(existing)) {
             state.combinedPermissions.put(perm, val);
@@ -218,22 +742,11 @@ class InheritanceSubjectDataBaker implements SubjectDataBaker {
             final Segment data,
             final int inheritanceLevel) {
 
-        for (Map.Entry<String, Integer> ent : data.permissions().entrySet()) {
-            String perm = ent.getKey();
-            if (ent.getKey().startsWith("#")) { // Prefix to exclude from inheritance
-                if (inheritanceLevel > 1) {
-                    continue;
-                }
-                perm = perm.substring(1);
-            }
-
-            try {
-                for (String matched : Globs.parse(perm)) {
-                    putPermIfNecessary(state, matched, ent.getValue());
-                }
-            } catch (GlobParseException e) { // If the permission is not a valid glob, assume it's a literal
-                putPermIfNecessary(state, perm, ent.getValue());
-            }
+        final ExpandedPermissions permissions = EXPANDED_PERMISSIONS.get(data);
+        // Permissions with the exclusion prefix are only applied to the subject itself
+        final int count = inheritanceLevel > 1 ? permissions.inheritableCount : permissions.nodes.length;
+        for (int i = 0; i < count; i++) {
+            putPermIfNecessary(state, permissions.nodes[i], permissions.values[i]);
         }
 
         for (final SubjectRef<?> parent : data.parents()) {
@@ -0,0 +1,57 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.subject;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The flattened data of inherited subjects, kept to be merged into every subject
+ * that inherits from them.
+ *
+ * <p>Each engine has its own cache, so entries never outlive the engine they were
+ * baked for, and engines do not compete for the same space.</p>
+ */
+public final class PartialBakeCache {
+    private final Cache<InheritanceSubjectDataBaker.PartialKey, InheritanceSubjectDataBaker.PartialBake> partials = Caffeine.newBuilder()
+            .maximumSize(4096)
+            .expireAfterAccess(1, TimeUnit.MINUTES)
+            .build();
+
+    @Nullable InheritanceSubjectDataBaker.PartialBake get(final InheritanceSubjectDataBaker.PartialKey key) {
+        return this.partials.getIfPresent(key);
+    }
+
+    void put(final InheritanceSubjectDataBaker.PartialKey key, final InheritanceSubjectDataBaker.PartialBake partial) {
+        this.partials.put(key, partial);
+    }
+
+    long size() {
+        this.partials.cleanUp();
+        return this.partials.estimatedSize();
+    }
+
+    /**
+     * Discard every partial bake.
+     */
+    public void clear() {
+        this.partials.invalidateAll();
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.subject;
+
+import ca.stellardrift.permissionsex.context.ContextDefinitionProvider;
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.context.ContextValue;
+import ca.stellardrift.permissionsex.impl.context.TimeContextDefinition;
+import ca.stellardrift.permissionsex.subject.ImmutableSubjectData;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of the context values used by the segments of one subject data object.
+ *
+ * <p>Segments are kept sorted with the most specific (largest) context sets first,
+ * and each context value of each segment is indexed by its key. This allows
+ * finding the segments applicable to a set of active contexts by only testing
+ * segment contexts that share a key with an active context.</p>
+ */
+final class SegmentContextIndex {
+    private static final TimeContextDefinition[] TIME_DEFINITIONS = {TimeContextDefinition.BEFORE_TIME, TimeContextDefinition.AFTER_TIME};
+    private static final SegmentContextIndex EMPTY = new SegmentContextIndex(Collections.emptyList(), new ContextValue<?>[0], new int[0], Collections.emptyMap(),
+            new TimeContextDefinition[0], new int[0][]);
+
+    private final List<ContextSet> segments;
+    private final ContextValue<?>[] values;
+    private final int[] valueSegments;
+    private final Map<String, int[]> valuesByKey;
+    // the time context keys used by any segment, with the values for each
+    private final TimeContextDefinition[] timeKeys;
+    private final int[][] timeValues;
+
+    private SegmentContextIndex(final List<ContextSet> segments, final ContextValue<?>[] values, final int[] valueSegments, final Map<String, int[]> valuesByKey,
+            final TimeContextDefinition[] timeKeys, final int[][] timeValues) {
+        this.segments = segments;
+        this.values = values;
+        this.valueSegments = valueSegments;
+        this.valuesByKey = valuesByKey;
+        this.timeKeys = timeKeys;
+        this.timeValues = timeValues;
+    }
+
+    static SegmentContextIndex of(final ImmutableSubjectData data) {
+        final Set<? extends Set<ContextValue<?>>> contexts = data.activeContexts();
+        if (contexts.isEmpty()) {
+            return EMPTY;
+        }
+
+        final List<ContextSet> segments = new ArrayList<>(contexts.size());
+        int valueCount = 0;
+        for (final Set<ContextValue<?>> segmentContexts : contexts) {
+            segments.add(ContextSet.of(segmentContexts));
+            valueCount += segmentContexts.size();
+        }
+        segments.sort(Comparator.<Set<ContextValue<?>>>comparingInt(Set::size).reversed());
+
+        final ContextValue<?>[] values = new ContextValue<?>[valueCount];
+        final int[] valueSegments = new int[valueCount];
+        final Map<String, List<Integer>> byKey = new HashMap<>();
+        int idx = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            for (final ContextValue<?> value : segments.get(i)) {
+                values[idx] = value;
+                valueSegments[idx] = i;
+                byKey.computeIfAbsent(value.key(), k -> new ArrayList<>()).add(idx);
+                idx++;
+            }
+        }
+
+        final Map<String, int[]> valuesByKey = new HashMap<>(byKey.size() * 2);
+        for (final Map.Entry<String, List<Integer>> ent : byKey.entrySet()) {
+            final int[] indices = new int[ent.getValue().size()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = ent.getValue().get(i);
+            }
+            valuesByKey.put(ent.getKey(), indices);
+        }
+
+        final List<TimeContextDefinition> timeKeys = new ArrayList<>(TIME_DEFINITIONS.length);
+        for (final TimeContextDefinition time : TIME_DEFINITIONS) {
+            if (valuesByKey.containsKey(time.name())) {
+                timeKeys.add(time);
+            }
+        }
+        final int[][] timeValues = new int[timeKeys.size()][];
+        for (int i = 0; i < timeValues.length; i++) {
+            timeValues[i] = valuesByKey.get(timeKeys.get(i).name());
+        }
+        return new SegmentContextIndex(segments, values, valueSegments, valuesByKey, timeKeys.toArray(new TimeContextDefinition[0]), timeValues);
+    }
+
+    /**
+     * Get the context sets of every segment where each context matches at least one of
+     * the active contexts.
+     *
+     * <p>Time contexts are matched against {@code now} unless the active contexts
+     * include a time.</p>
+     *
+     * @param activeContexts the contexts to match against
+     * @param definitions the provider to resolve context definitions with
+     * @param now the current time, in epoch milliseconds
+     * @return applicable segment contexts, largest first
+     */
+    List<ContextSet> applicable(final Set<ContextValue<?>> activeContexts, final ContextDefinitionProvider definitions, final long now) {
+        if (this.segments.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final boolean[] matched = new boolean[this.values.length];
+        final int[] matchCounts = new int[this.segments.size()];
+        for (final ContextValue<?> active : activeContexts) {
+            final int @Nullable [] candidates = this.valuesByKey.get(active.key());
+            if (candidates != null) {
+                match(candidates, active, definitions, matched, matchCounts);
+            }
+        }
+
+        // Time contexts are not active contexts, so unless a time was given explicitly they match the current time
+        for (int i = 0; i < this.timeKeys.length; i++) {
+            final TimeContextDefinition time = this.timeKeys[i];
+            if (!hasKey(activeContexts, time.name())) {
+                match(this.timeValues[i], time.createValue(time.timeAt(now)), definitions, matched, matchCounts);
+            }
+        }
+
+        final List<ContextSet> ret = new ArrayList<>();
+        for (int i = 0; i < matchCounts.length; i++) {
+            if (matchCounts[i] == this.segments.get(i).size()) {
+                ret.add(this.segments.get(i));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Get the first instant after {@code now} where a time context of any segment starts
+     * or stops matching, changing the result of {@link #applicable(Set, ContextDefinitionProvider, long)}.
+     *
+     * @param activeContexts the contexts matched against
+     * @param definitions the provider to resolve context definitions with
+     * @param now the current time, in epoch milliseconds
+     * @return the next boundary in epoch milliseconds, or {@link Long#MAX_VALUE} if there is none
+     */
+    long nextBoundary(final Set<ContextValue<?>> activeContexts, final ContextDefinitionProvider definitions, final long now) {
+        long ret = Long.MAX_VALUE;
+        for (int i = 0; i < this.timeKeys.length; i++) {
+            final TimeContextDefinition time = this.timeKeys[i];
+            if (!hasKey(activeContexts, time.name())) {
+                for (final int candidate : this.timeValues[i]) {
+                    final ContextValue<?> value = this.values[candidate];
+                    if (value.tryResolve(definitions) && value.definition() == time) {
+                        final long boundary = time.boundary((ZonedDateTime) value.parsedValue());
+                        if (boundary > now && boundary < ret) {
+                            ret = boundary;
+                        }
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    private void match(final int[] candidates, final ContextValue<?> active, final ContextDefinitionProvider definitions, final boolean[] matched, final int[] matchCounts) {
+        for (final int candidate : candidates) {
+            if (!matched[candidate] && matches(this.values[candidate], active, definitions)) {
+                matched[candidate] = true;
+                matchCounts[this.valueSegments[candidate]]++;
+            }
+        }
+    }
+
+    private static boolean hasKey(final Set<ContextValue<?>> contexts, final String key) {
+        for (final ContextValue<?> value : contexts) {
+            if (value.key().equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> boolean matches(final ContextValue<T> value, final ContextValue<?> other, final ContextDefinitionProvider definitions) {
+        return value.tryResolve(definitions)
+                && value.definition().matches(value, ((ContextValue<T>) other).getParsedValue(value.definition()));
+    }
+
+    /**
+     * Merge the applicable segment contexts of two data objects, keeping them ordered
+     * from largest to smallest.
+     *
+     * <p>Where both have a context set of the same size, those of {@code first} come first,
+     * and a context set present in both is only included once.</p>
+     *
+     * @param first the applicable contexts of the first data object
+     * @param second the applicable contexts of the second data object
+     * @return the merged contexts
+     */
+    static List<ContextSet> merge(final List<ContextSet> first, final List<ContextSet> second) {
+        if (second.isEmpty()) {
+            return first;
+        } else if (first.isEmpty()) {
+            return second;
+        }
+
+        final List<ContextSet> ret = new ArrayList<>(first.size() + second.size());
+        final Set<ContextSet> seen = new HashSet<>(first);
+        int i = 0;
+        int j = 0;
+        while (i < first.size() || j < second.size()) {
+            if (j == second.size() || (i < first.size() && first.get(i).size() >= second.get(j).size())) {
+                ret.add(first.get(i++));
+            } else {
+                final ContextSet next = second.get(j++);
+                if (!seen.contains(next)) {
+                    ret.add(next);
+                }
+            }
+        }
+        return ret;
+    }
+}
@@ -17,6 +17,7 @@
 package ca.stellardrift.permissionsex.impl.subject;
 
 import ca.stellardrift.permissionsex.context.ContextValue;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -27,4 +28,13 @@ public interface SubjectDataBaker {
     static SubjectDataBaker inheritance() {
         return InheritanceSubjectDataBaker.INSTANCE;
     }
+
+    /**
+     * Get statistics for the cache of parsed permissions shared by inheritance bakers.
+     *
+     * @return the current statistics
+     */
+    static CacheStats inheritanceGlobCacheStats() {
+        return InheritanceSubjectDataBaker.globCacheStats();
+    }
 }
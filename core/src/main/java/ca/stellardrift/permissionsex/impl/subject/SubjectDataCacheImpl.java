@@ -17,6 +17,8 @@
 package ca.stellardrift.permissionsex.impl.subject;
 
 import ca.stellardrift.permissionsex.datastore.DataStore;
+import ca.stellardrift.permissionsex.impl.jfr.EngineEvents;
+import ca.stellardrift.permissionsex.impl.jfr.FlightEvent;
 import ca.stellardrift.permissionsex.impl.util.CacheListenerHolder;
 import ca.stellardrift.permissionsex.subject.ImmutableSubjectData;
 import ca.stellardrift.permissionsex.subject.InvalidIdentifierException;
@@ -25,6 +27,7 @@ import ca.stellardrift.permissionsex.subject.SubjectRef;
 import ca.stellardrift.permissionsex.subject.SubjectType;
 import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.errorprone.annotations.concurrent.LazyInit;
 import org.checkerframework.checker.nullness.qual.EnsuresNonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -73,7 +76,8 @@ public final class SubjectDataCacheImpl<I> implements SubjectDataCache<I> {
         this.dataStore = newDataStore;
         AsyncLoadingCache<I, ImmutableSubjectData> oldCache = this.cache.getAndSet(Caffeine.newBuilder()
                         .maximumSize(512)
-                        .buildAsync((key, executor) -> dataStore.getData(this.type.name(), this.type.serializeIdentifier(key), clearListener(key))));
+                        .recordStats()
+                        .buildAsync((key, executor) -> load(key)));
         if (oldCache != null) {
             oldCache.synchronous().asMap().forEach((k, v) -> {
                     data(k, null).thenAccept(data -> listeners.call(k, data));
@@ -82,6 +86,28 @@ public final class SubjectDataCacheImpl<I> implements SubjectDataCache<I> {
         }
     }
 
+    private CompletableFuture<ImmutableSubjectData> load(final I key) {
+        final FlightEvent.Span event = EngineEvents.SUBJECT_DATA_LOAD.begin();
+        final String serialized = this.type.serializeIdentifier(key);
+        final CompletableFuture<ImmutableSubjectData> ret = this.dataStore.getData(this.type.name(), serialized, clearListener(key));
+        if (event.active()) {
+            ret.thenAccept(data -> event.set("subjectType", this.type.name())
+                .set("subject", serialized)
+                .set("segments", data.segments().size())
+                .commit());
+        }
+        return ret;
+    }
+
+    /**
+     * Get statistics for this cache, including hits, misses, and evictions.
+     *
+     * @return the current statistics
+     */
+    public CacheStats stats() {
+        return this.cache.get().synchronous().stats();
+    }
+
     @Override
     public CompletableFuture<ImmutableSubjectData> data(final I identifier, final @Nullable Consumer<ImmutableSubjectData> listener) {
         requireNonNull(identifier, "identifier");
@@ -0,0 +1,69 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.subject;
+
+import ca.stellardrift.permissionsex.subject.SubjectRef;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Tracks which calculated subjects have data from each subject baked in.
+ *
+ * <p>Entries are added whenever a bake visits an inherited subject, so every subject
+ * that inherits from another, directly or not, is recorded as its dependent.
+ * Dependents are only weakly held, and are not removed if a later bake stops
+ * inheriting from a subject, which at worst causes an unneeded invalidation.</p>
+ */
+public final class SubjectDependents {
+    private final ConcurrentMap<SubjectRef<?>, Set<CalculatedSubjectImpl<?>>> dependents = new ConcurrentHashMap<>();
+
+    /**
+     * Record that the bake of {@code dependent} includes the data of {@code inherited}.
+     *
+     * @param inherited the subject visited while baking
+     * @param dependent the subject being baked
+     */
+    void add(final SubjectRef<?> inherited, final CalculatedSubjectImpl<?> dependent) {
+        requireNonNull(inherited, "inherited");
+        requireNonNull(dependent, "dependent");
+        if (inherited.equals(dependent.identifier())) {
+            return;
+        }
+
+        this.dependents.computeIfAbsent(SubjectRef.mapKeySafe(inherited),
+            k -> Collections.newSetFromMap(Caffeine.newBuilder().weakKeys().<CalculatedSubjectImpl<?>, Boolean>build().asMap()))
+            .add(dependent);
+    }
+
+    /**
+     * Get every subject whose baked data includes data from {@code subject}.
+     *
+     * @param subject the subject to get dependents of
+     * @return an unmodifiable view of the dependent subjects
+     */
+    Set<CalculatedSubjectImpl<?>> dependents(final SubjectRef<?> subject) {
+        final @Nullable Set<CalculatedSubjectImpl<?>> ret = this.dependents.get(requireNonNull(subject, "subject"));
+        return ret == null ? Collections.emptySet() : Collections.unmodifiableSet(ret);
+    }
+}
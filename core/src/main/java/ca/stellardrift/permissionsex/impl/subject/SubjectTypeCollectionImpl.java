@@ -17,33 +17,50 @@
 package ca.stellardrift.permissionsex.impl.subject;
 
 import ca.stellardrift.permissionsex.impl.PermissionsEx;
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.context.ContextValue;
 import ca.stellardrift.permissionsex.datastore.DataStore;
+import ca.stellardrift.permissionsex.metrics.Timer;
 import ca.stellardrift.permissionsex.subject.CalculatedSubject;
 import ca.stellardrift.permissionsex.subject.SubjectRef;
 import ca.stellardrift.permissionsex.subject.SubjectType;
 import ca.stellardrift.permissionsex.subject.SubjectTypeCollection;
+import ca.stellardrift.permissionsex.util.PermissionKey;
 import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
+import static java.util.Objects.requireNonNull;
+
 public class SubjectTypeCollectionImpl<I> implements SubjectTypeCollection<I> {
     private final PermissionsEx<?> pex;
     private final SubjectType<I> type;
     private final SubjectDataCacheImpl<I> persistentData;
     private final SubjectDataCacheImpl<I> transientData;
     private final AsyncLoadingCache<I, CalculatedSubject> cache;
+    private final Timer bakeTimer;
 
     public SubjectTypeCollectionImpl(PermissionsEx<?> pex, final SubjectType<I> type, SubjectDataCacheImpl<I> persistentData, SubjectDataCacheImpl<I> transientData) {
         this.pex = pex;
         this.type = type;
         this.persistentData = persistentData;
         this.transientData = transientData;
+        this.bakeTimer = pex.metrics().timer("bake");
         this.cache = Caffeine.newBuilder()
                 .executor(pex.asyncExecutor())
+                .recordStats()
                 .buildAsync((key, executor) -> {
                     CalculatedSubjectImpl<I> subj = new CalculatedSubjectImpl<>(
                             SubjectDataBaker.inheritance(),
@@ -65,6 +82,15 @@ public class SubjectTypeCollectionImpl<I> implements SubjectTypeCollection<I> {
         return this.type;
     }
 
+    /**
+     * Get statistics for this cache, including hits, misses, and evictions.
+     *
+     * @return the current statistics
+     */
+    public CacheStats stats() {
+        return this.cache.synchronous().stats();
+    }
+
     @Override
     public void cacheAll() {
         this.persistentData.cacheAll();
@@ -76,6 +102,41 @@ public class SubjectTypeCollectionImpl<I> implements SubjectTypeCollection<I> {
         return Collections.unmodifiableCollection(this.cache.synchronous().asMap().values());
     }
 
+    @Override
+    public Map<I, Integer> checkAll(final String permission) {
+        return checkAll(permission, null);
+    }
+
+    @Override
+    public Map<I, Integer> checkAll(final String permission, final @Nullable Set<ContextValue<?>> contexts) {
+        final PermissionKey key = PermissionKey.unregistered(requireNonNull(permission, "permission"));
+        final @Nullable ContextSet contextSet = contexts == null ? null : ContextSet.of(contexts);
+        final Map<I, Integer> ret = new HashMap<>();
+        final List<SubjectRef<?>> checked = new ArrayList<>();
+        final List<Set<ContextValue<?>>> checkedContexts = new ArrayList<>();
+        int[] values = new int[16];
+        for (final Map.Entry<I, CompletableFuture<CalculatedSubject>> entry : this.cache.asMap().entrySet()) {
+            final @Nullable CalculatedSubject subject = entry.getValue().getNow(null);
+            if (subject != null) {
+                final Set<ContextValue<?>> subjectContexts = contextSet == null ? subject.activeContexts() : contextSet;
+                final int value = ((CalculatedSubjectImpl<?>) subject).permissionUnreported(subjectContexts, key);
+                ret.put(entry.getKey(), value);
+                if (checked.size() == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                values[checked.size()] = value;
+                checked.add(subject.identifier());
+                checkedContexts.add(subjectContexts);
+            }
+        }
+
+        // reported once, rather than once per subject
+        if (!checked.isEmpty()) {
+            this.pex.getNotifier().onPermissionCheckAll(permission, checked, checkedContexts, Arrays.copyOf(values, checked.size()));
+        }
+        return ret;
+    }
+
     @Override
     public void uncache(final I identifier) {
         this.persistentData.invalidate(identifier);
@@ -102,6 +163,10 @@ public class SubjectTypeCollectionImpl<I> implements SubjectTypeCollection<I> {
         return this.pex;
     }
 
+    Timer bakeTimer() {
+        return this.bakeTimer;
+    }
+
     /**
      * For internal use only. Update the data store associated with this cache, when for example the
      * active data store is changed in the engine.
@@ -0,0 +1,246 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.util;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An approximate count of the most frequent items in a stream, using the space-saving algorithm.
+ *
+ * <p>At most {@code capacity} items are tracked. When an untracked item arrives and every slot is taken,
+ * the least frequent item is replaced, and the new item inherits its count as an upper bound on the error.
+ * Any item seen more than {@code total / capacity} times is guaranteed to be tracked.</p>
+ *
+ * <p>Counters are kept in buckets of equal count, linked in order of count, so the least frequent
+ * item is always at hand and adding one to a count only moves its counter to a neighbouring bucket.
+ * Adding a larger weight moves past at most one bucket per distinct count skipped over.</p>
+ *
+ * @param <T> the item type
+ */
+public final class HeavyHitters<T> {
+    private final int capacity;
+    private final Map<T, Counter<T>> counters;
+    private @Nullable Bucket<T> lowest;
+    private @Nullable Bucket<T> highest;
+
+    public HeavyHitters(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, but was " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    public void add(final T item) {
+        this.add(item, 1);
+    }
+
+    public synchronized void add(final T item, final long weight) {
+        requireNonNull(item, "item");
+        @Nullable Counter<T> counter = this.counters.get(item);
+        if (counter != null) {
+            this.move(counter, counter.bucket, counter.bucket.count + weight);
+        } else if (this.counters.size() < this.capacity) {
+            counter = new Counter<>(item, 0);
+            this.counters.put(item, counter);
+            this.move(counter, null, weight);
+        } else {
+            final @Nullable Bucket<T> lowest = this.lowest;
+            assert lowest != null;
+            counter = lowest.first;
+            assert counter != null;
+            this.counters.remove(counter.item);
+            counter.item = item;
+            counter.error = lowest.count;
+            this.counters.put(item, counter);
+            this.move(counter, lowest, lowest.count + weight);
+        }
+    }
+
+    /**
+     * Move a counter from its bucket to the bucket for a new count, creating it if needed.
+     *
+     * @param counter the counter to move
+     * @param from the counter's current bucket, or null for a new counter
+     * @param count the counter's new count
+     */
+    private void move(final Counter<T> counter, final @Nullable Bucket<T> from, final long count) {
+        // find the last bucket with a count no greater than the new count
+        @Nullable Bucket<T> before = from;
+        @Nullable Bucket<T> next = from == null ? this.lowest : from.next;
+        while (next != null && next.count <= count) {
+            before = next;
+            next = next.next;
+        }
+
+        if (from != null) {
+            from.remove(counter);
+        }
+        if (before == null || before.count != count) {
+            final Bucket<T> created = new Bucket<>(count);
+            created.prev = before;
+            created.next = next;
+            if (before == null) {
+                this.lowest = created;
+            } else {
+                before.next = created;
+            }
+            if (next == null) {
+                this.highest = created;
+            } else {
+                next.prev = created;
+            }
+            before = created;
+        }
+        before.add(counter);
+
+        if (from != null && from.isEmpty()) {
+            this.unlink(from);
+        }
+    }
+
+    private void unlink(final Bucket<T> bucket) {
+        if (bucket.prev == null) {
+            this.lowest = bucket.next;
+        } else {
+            bucket.prev.next = bucket.next;
+        }
+        if (bucket.next == null) {
+            this.highest = bucket.prev;
+        } else {
+            bucket.next.prev = bucket.prev;
+        }
+    }
+
+    /**
+     * Get the most frequent items, most frequent first.
+     *
+     * @param limit the maximum number of items to return
+     * @return copies of the counters for the top items
+     */
+    public synchronized List<Entry<T>> top(final int limit) {
+        final List<Entry<T>> ret = new ArrayList<>(Math.min(limit, this.counters.size()));
+        for (@Nullable Bucket<T> bucket = this.highest; bucket != null && ret.size() < limit; bucket = bucket.prev) {
+            for (@Nullable Counter<T> counter = bucket.first; counter != null && ret.size() < limit; counter = counter.next) {
+                ret.add(new Entry<>(counter.item, bucket.count, counter.error));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Every tracked counter with the same count.
+     */
+    static final class Bucket<T> {
+        final long count;
+        @Nullable Bucket<T> prev;
+        @Nullable Bucket<T> next;
+        @Nullable Counter<T> first;
+
+        Bucket(final long count) {
+            this.count = count;
+        }
+
+        boolean isEmpty() {
+            return this.first == null;
+        }
+
+        void add(final Counter<T> counter) {
+            counter.bucket = this;
+            counter.prev = null;
+            counter.next = this.first;
+            final @Nullable Counter<T> first = this.first;
+            if (first != null) {
+                first.prev = counter;
+            }
+            this.first = counter;
+        }
+
+        void remove(final Counter<T> counter) {
+            if (counter.prev == null) {
+                this.first = counter.next;
+            } else {
+                counter.prev.next = counter.next;
+            }
+            if (counter.next != null) {
+                counter.next.prev = counter.prev;
+            }
+        }
+    }
+
+    /**
+     * The count for a single tracked item.
+     */
+    static final class Counter<T> {
+        T item;
+        long error;
+        Bucket<T> bucket; // set as soon as the counter is placed
+        @Nullable Counter<T> prev;
+        @Nullable Counter<T> next;
+
+        Counter(final T item, final long error) {
+            this.item = item;
+            this.error = error;
+        }
+    }
+
+    public static final class Entry<T> {
+        final T item;
+        final long count;
+        final long error;
+
+        Entry(final T item, final long count, final long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public T item() {
+            return this.item;
+        }
+
+        /**
+         * The estimated count, which is never less than the true count.
+         *
+         * @return the estimated count
+         */
+        public long count() {
+            return this.count;
+        }
+
+        /**
+         * The most the estimated count may exceed the true count by.
+         *
+         * @return the maximum overestimate
+         */
+        public long error() {
+            return this.error;
+        }
+
+        @Override
+        public String toString() {
+            return this.item + "=" + this.count + (this.error == 0 ? "" : " (error " + this.error + ")");
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.util;
+
+import ca.stellardrift.permissionsex.metrics.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations, with one bucket per power of two nanoseconds.
+ *
+ * <p>Recording is lock-free. Percentiles are reported as the upper bound of the bucket they fall in,
+ * so are accurate to within a factor of two.</p>
+ */
+public final class LatencyHistogram implements Timer {
+    private static final int BUCKETS = Long.SIZE;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+
+    @Override
+    public void record(final long nanos) {
+        final long clamped = Math.max(0, nanos);
+        this.buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(clamped));
+        this.totalNanos.add(clamped);
+    }
+
+    @Override
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += this.buckets.get(i);
+        }
+        return count;
+    }
+
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+        }
+        return new Snapshot(counts, this.totalNanos.sum());
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+
+        Snapshot(final long[] counts, final long totalNanos) {
+            this.counts = counts;
+            long count = 0;
+            for (final long bucket : counts) {
+                count += bucket;
+            }
+            this.count = count;
+            this.totalNanos = totalNanos;
+        }
+
+        public long count() {
+            return this.count;
+        }
+
+        public long meanNanos() {
+            return this.count == 0 ? 0 : this.totalNanos / this.count;
+        }
+
+        /**
+         * Get an upper bound on the duration that a fraction of recorded durations did not exceed.
+         *
+         * @param fraction the fraction, between 0 and 1
+         * @return the duration, in nanoseconds
+         */
+        public long percentileNanos(final double fraction) {
+            if (fraction < 0 || fraction > 1) {
+                throw new IllegalArgumentException("Fraction must be between 0 and 1, but was " + fraction);
+            }
+            final long target = (long) Math.ceil(this.count * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.counts[i];
+                if (seen >= target && seen > 0) {
+                    return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + this.count
+                + " mean=" + TimeUnit.NANOSECONDS.toMicros(meanNanos()) + "us"
+                + " p50<=" + TimeUnit.NANOSECONDS.toMicros(percentileNanos(0.5)) + "us"
+                + " p99<=" + TimeUnit.NANOSECONDS.toMicros(percentileNanos(0.99)) + "us";
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.backend.file;
+
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.datastore.DataStore;
+import ca.stellardrift.permissionsex.datastore.ProtoDataStore;
+import ca.stellardrift.permissionsex.exception.PermissionsLoadingException;
+import ca.stellardrift.permissionsex.metrics.Timer;
+import ca.stellardrift.permissionsex.subject.ImmutableSubjectData;
+import ca.stellardrift.permissionsex.test.PermissionsExTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class FileDataStoreTest extends PermissionsExTest {
+
+    private DataStore fileStore() throws PermissionsLoadingException {
+        final FileDataStore.Config config = new FileDataStore.Config();
+        config.file = "permissions.json";
+        config.autoReload = false;
+        final FileDataStore.Factory factory = new FileDataStore.Factory();
+        return factory.defrost(this.manager(), ProtoDataStore.of("file-test", config, factory));
+    }
+
+    private Timer timer(final String operation) {
+        return this.manager().metrics().timer("datastore.file-test." + operation);
+    }
+
+    @Test
+    void testOperationsTimed() throws PermissionsLoadingException {
+        final DataStore store = fileStore();
+        try {
+            final long gets = timer("get-data").count();
+            final long sets = timer("set-data").count();
+            final long saves = timer("save").count();
+
+            final ImmutableSubjectData data = store.getData("user", "alice", null).join();
+            store.setData("user", "alice", data.withSegment(ContextSet.empty(), s -> s.withPermission("world.edit", 1))).join();
+
+            assertEquals(gets + 1, timer("get-data").count());
+            assertEquals(sets + 1, timer("set-data").count());
+            assertEquals(saves + 1, timer("save").count());
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Flight Recorder is only reachable reflectively here, since tests are also compiled for Java 8.
+     */
+    @Test
+    void testSaveRecorded(final @TempDir Path recordingDir) throws Exception {
+        final Class<?> recordingType;
+        try {
+            recordingType = Class.forName("jdk.jfr.Recording");
+        } catch (final ClassNotFoundException ex) {
+            assumeTrue(false, "Flight Recorder is not available");
+            return;
+        }
+
+        final DataStore store = fileStore();
+        final Object recording = recordingType.getConstructor().newInstance();
+        final Path dump = recordingDir.resolve("save.jfr");
+        try {
+            recordingType.getMethod("enable", String.class).invoke(recording, "ca.stellardrift.permissionsex.FileSave");
+            recordingType.getMethod("start").invoke(recording);
+            final ImmutableSubjectData data = store.getData("user", "alice", null).join();
+            store.setData("user", "alice", data.withSegment(ContextSet.empty(), s -> s.withPermission("world.edit", 1))).join();
+            recordingType.getMethod("stop").invoke(recording);
+            recordingType.getMethod("dump", Path.class).invoke(recording, dump);
+        } finally {
+            recordingType.getMethod("close").invoke(recording);
+            store.close();
+        }
+
+        final List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+            .getMethod("readAllEvents", Path.class)
+            .invoke(null, dump);
+        assertEquals(1, events.size());
+        final Method value = Class.forName("jdk.jfr.consumer.RecordedObject").getMethod("getValue", String.class);
+        final Object event = events.get(0);
+        assertEquals("file-test", value.invoke(event, "dataStore"));
+        assertEquals(this.manager().baseDirectory().resolve("permissions.json").toString(), value.invoke(event, "file"));
+        assertTrue((Long) value.invoke(event, "bytes") > 0);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.context;
+
+import ca.stellardrift.permissionsex.context.ContextInheritance;
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.context.ContextValue;
+import ca.stellardrift.permissionsex.impl.backend.memory.MemoryContextInheritance;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ContextInheritanceClosureTest {
+    private static final ContextValue<?> NETHER = new ContextValue<>("world", "nether");
+    private static final ContextValue<?> OVERWORLD = new ContextValue<>("world", "overworld");
+    private static final ContextValue<?> LOBBY = new ContextValue<>("server", "lobby");
+    private static final ContextValue<?> NETWORK = new ContextValue<>("server-tag", "network");
+    private static final ContextValue<?> ADMIN = new ContextValue<>("server-tag", "admin");
+
+    private static ContextInheritance inheritance() {
+        return new MemoryContextInheritance() {}
+            .parents(NETHER, Collections.singletonList(OVERWORLD))
+            .parents(OVERWORLD, Collections.singletonList(LOBBY))
+            .parents(LOBBY, Arrays.asList(NETWORK, NETHER));
+    }
+
+    @Test
+    void testExpandsTransitively() {
+        final ContextInheritanceClosure closure = ContextInheritanceClosure.of(inheritance());
+
+        assertEquals(ContextSet.of(NETHER, OVERWORLD, LOBBY, NETWORK), closure.expand(ContextSet.of(NETHER)));
+        assertEquals(ContextSet.of(OVERWORLD, LOBBY, NETWORK, NETHER, ADMIN), closure.expand(ContextSet.of(OVERWORLD, ADMIN)));
+    }
+
+    @Test
+    void testUnchangedWithoutParents() {
+        final ContextSet input = ContextSet.of(NETWORK, ADMIN);
+
+        assertEquals(input, ContextInheritanceClosure.of(inheritance()).expand(input));
+        assertEquals(input, ContextInheritanceClosure.of(new MemoryContextInheritance() {}).expand(input));
+        assertEquals(ContextSet.empty(), ContextInheritanceClosure.of(inheritance()).expand(Collections.emptySet()));
+    }
+}
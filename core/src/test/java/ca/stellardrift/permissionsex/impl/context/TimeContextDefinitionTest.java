@@ -0,0 +1,76 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.context;
+
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.context.ContextValue;
+import ca.stellardrift.permissionsex.subject.CalculatedSubject;
+import ca.stellardrift.permissionsex.test.PermissionsExTest;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimeContextDefinitionTest extends PermissionsExTest {
+    @Test
+    void testBoundaries() {
+        final ZonedDateTime time = TimeContextDefinition.BEFORE_TIME.currentTime();
+        final long millis = time.toInstant().toEpochMilli();
+        assertEquals(millis, TimeContextDefinition.BEFORE_TIME.boundary(time));
+        assertEquals(millis + 1000, TimeContextDefinition.AFTER_TIME.boundary(time));
+
+        // each definition stops or starts matching exactly at its boundary
+        assertTrue(TimeContextDefinition.BEFORE_TIME.matches(time, TimeContextDefinition.BEFORE_TIME.timeAt(millis - 1)));
+        assertFalse(TimeContextDefinition.BEFORE_TIME.matches(time, TimeContextDefinition.BEFORE_TIME.timeAt(millis)));
+        assertFalse(TimeContextDefinition.AFTER_TIME.matches(time, TimeContextDefinition.AFTER_TIME.timeAt(millis + 999)));
+        assertTrue(TimeContextDefinition.AFTER_TIME.matches(time, TimeContextDefinition.AFTER_TIME.timeAt(millis + 1000)));
+    }
+
+    @Test
+    void testTimeUsedButNotActive() {
+        final CalculatedSubject user = subject(USER, "alice");
+        final ZonedDateTime later = TimeContextDefinition.BEFORE_TIME.currentTime().plusHours(1);
+        user.data().update(ContextSet.of(TimeContextDefinition.BEFORE_TIME.createValue(later)), segment -> segment.withPermission("temporary", 1)).join();
+
+        for (final ContextValue<?> active : user.activeContexts()) {
+            assertFalse(active.definition() instanceof TimeContextDefinition, () -> "time context " + active + " is active");
+        }
+        final Set<ContextValue<?>> used = user.usedContextValues().join();
+        assertTrue(used.stream().anyMatch(value -> value.key().equals("before-time")), () -> "no time in " + used);
+        assertEquals(1, user.permission("temporary"));
+    }
+
+    @Test
+    void testBakeExpiresAtBoundary() throws InterruptedException {
+        final CalculatedSubject user = subject(USER, "alice");
+        final ZonedDateTime soon = TimeContextDefinition.BEFORE_TIME.currentTime().plusSeconds(2);
+        final ZonedDateTime earlier = TimeContextDefinition.AFTER_TIME.currentTime().minusHours(1);
+        user.data().update(ContextSet.of(TimeContextDefinition.BEFORE_TIME.createValue(soon)), segment -> segment.withPermission("temporary", 1)).join();
+        user.data().update(ContextSet.of(TimeContextDefinition.AFTER_TIME.createValue(earlier)), segment -> segment.withPermission("started", 1)).join();
+
+        assertEquals(1, user.permission("temporary"));
+        assertEquals(1, user.permission("started"));
+
+        Thread.sleep(Math.max(0, TimeContextDefinition.BEFORE_TIME.boundary(soon) - System.currentTimeMillis()) + 50);
+        assertEquals(0, user.permission("temporary"));
+        assertEquals(1, user.permission("started"));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.logging;
+
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.subject.SubjectRef;
+import ca.stellardrift.permissionsex.subject.SubjectType;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DebugPermissionCheckNotifierTest {
+    private static final String LOGGER_NAME = "DebugPermissionCheckNotifierTest";
+    private static final SubjectRef<String> SUBJECT = SubjectRef.subject(SubjectType.stringIdentBuilder("user").build(), "alice");
+
+    private final List<LogRecord> records = new ArrayList<>();
+    private final Queue<Runnable> drains = new ArrayDeque<>();
+    private boolean failing;
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(final LogRecord record) {
+            if (failing && record.getLevel() == Level.INFO) {
+                throw new IllegalStateException("Log failure");
+            }
+            records.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+    private Logger julLogger;
+
+    @BeforeEach
+    void captureLogs() {
+        this.julLogger = Logger.getLogger(LOGGER_NAME);
+        this.julLogger.setUseParentHandlers(false);
+        this.julLogger.setLevel(Level.ALL);
+        this.julLogger.addHandler(this.handler);
+    }
+
+    @AfterEach
+    void releaseLogs() {
+        this.julLogger.removeHandler(this.handler);
+    }
+
+    private DebugPermissionCheckNotifier notifier(final @Nullable String filterPrefix) {
+        return new DebugPermissionCheckNotifier(
+            WrappingFormattedLogger.of(LoggerFactory.getLogger(LOGGER_NAME), false),
+            new RecordingPermissionCheckNotifier(Runnable::run),
+            filterPrefix == null ? null : perm -> perm.startsWith(filterPrefix),
+            this.drains::add
+        );
+    }
+
+    private void runDrains() {
+        Runnable drain;
+        while ((drain = this.drains.poll()) != null) {
+            drain.run();
+        }
+    }
+
+    @Test
+    void testFilteredChecksTakeNoSpace() {
+        final DebugPermissionCheckNotifier notifier = notifier("wanted.");
+        for (int i = 0; i < 20_000; i++) {
+            notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "unwanted." + i, 1);
+            if (i % 5_000 == 0) {
+                notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "wanted." + i, 1);
+            }
+        }
+        runDrains();
+
+        assertEquals(0, notifier.droppedChecks());
+        assertEquals(4, this.records.size());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(this.records.get(i).getMessage().startsWith("Permission wanted." + i * 5_000 + " "), this.records.get(i).getMessage());
+        }
+    }
+
+    @Test
+    void testDrainKeepsOrderAndCountsDropped() {
+        final DebugPermissionCheckNotifier notifier = notifier(null);
+        final int buffered = 8192;
+        for (int i = 0; i < buffered + 5; i++) {
+            notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "node." + i, 1);
+        }
+        assertEquals(5, notifier.droppedChecks());
+        assertEquals(1, this.drains.size());
+        runDrains();
+
+        assertEquals(buffered + 1, this.records.size());
+        for (int i = 0; i < buffered; i++) {
+            assertTrue(this.records.get(i).getMessage().startsWith("Permission node." + i + " "), this.records.get(i).getMessage());
+        }
+        final LogRecord dropped = this.records.get(buffered);
+        assertEquals(Level.WARNING, dropped.getLevel());
+        assertTrue(dropped.getMessage().startsWith("5 checks"), dropped.getMessage());
+
+        // space is available again once drained
+        notifier.onOptionCheck(SUBJECT, ContextSet.empty(), "prefix", "[A]");
+        runDrains();
+        assertEquals(buffered + 2, this.records.size());
+        assertTrue(this.records.get(buffered + 1).getMessage().startsWith("Option prefix "));
+    }
+
+    @Test
+    void testDrainContinuesAfterFailure() {
+        final DebugPermissionCheckNotifier notifier = notifier(null);
+        this.failing = true;
+        notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "node.0", 1);
+        notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "node.1", 1);
+        runDrains();
+        assertEquals(2, this.records.size());
+        assertEquals(Level.SEVERE, this.records.get(0).getLevel());
+
+        // a later check is still logged
+        this.failing = false;
+        notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "node.2", 1);
+        runDrains();
+        assertEquals(3, this.records.size());
+        assertTrue(this.records.get(2).getMessage().startsWith("Permission node.2 "), this.records.get(2).getMessage());
+    }
+}
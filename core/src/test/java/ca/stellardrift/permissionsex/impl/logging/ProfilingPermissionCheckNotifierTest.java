@@ -0,0 +1,71 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.logging;
+
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.subject.SubjectRef;
+import ca.stellardrift.permissionsex.subject.SubjectType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ProfilingPermissionCheckNotifierTest {
+    private static final SubjectRef<String> SUBJECT = SubjectRef.subject(SubjectType.stringIdentBuilder("user").build(), "alice");
+
+    @Test
+    void testBufferedChecksCounted() {
+        final Queue<Runnable> drains = new ArrayDeque<>();
+        final ProfilingPermissionCheckNotifier profiler = new ProfilingPermissionCheckNotifier(new RecordingPermissionCheckNotifier(Runnable::run), drains::add);
+        profiler.onPermissionCheck(SUBJECT, ContextSet.empty(), "world.edit", 1);
+        profiler.onPermissionCheck(SUBJECT, ContextSet.empty(), "world.edit", 1);
+        profiler.onOptionCheck(SUBJECT, ContextSet.empty(), "prefix", null);
+        assertEquals(0, drains.size());
+
+        // reading the profile counts checks still waiting in the buffer
+        final ProfilingPermissionCheckNotifier.Profile profile = profiler.profile(10);
+        assertEquals("world.edit", profile.permissions().get(0).item());
+        assertEquals(2, profile.permissions().get(0).count());
+        assertEquals(1, profile.options().get(0).count());
+        assertEquals(3, profile.checkedSubjects().get(0).count());
+    }
+
+    @Test
+    void testFullBufferDropsChecks() {
+        final Queue<Runnable> drains = new ArrayDeque<>();
+        final ProfilingPermissionCheckNotifier profiler = new ProfilingPermissionCheckNotifier(new RecordingPermissionCheckNotifier(Runnable::run), drains::add);
+        for (int i = 0; i < 300; i++) {
+            profiler.onPermissionCheck(SUBJECT, ContextSet.empty(), "world.edit", 1);
+        }
+        assertEquals(1, drains.size());
+        assertEquals(2 * (300 - CheckBuffer.CAPACITY), profiler.droppedChecks());
+
+        drains.poll().run();
+        profiler.onPermissionCheck(SUBJECT, ContextSet.empty(), "world.edit", 1);
+        assertEquals(CheckBuffer.CAPACITY + 1, profiler.profile(10).permissions().get(0).count());
+    }
+
+    @Test
+    void testResetDiscardsBufferedChecks() {
+        final ProfilingPermissionCheckNotifier profiler = new ProfilingPermissionCheckNotifier(new RecordingPermissionCheckNotifier(Runnable::run), Runnable::run);
+        profiler.onPermissionCheck(SUBJECT, ContextSet.empty(), "world.edit", 1);
+        profiler.reset();
+        assertEquals(0, profiler.profile(10).permissions().size());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.logging;
+
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.subject.SubjectRef;
+import ca.stellardrift.permissionsex.subject.SubjectType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RecordingPermissionCheckNotifierTest {
+    private static final SubjectRef<String> SUBJECT = SubjectRef.subject(SubjectType.stringIdentBuilder("user").build(), "alice");
+
+    @Test
+    void testCounts() {
+        final RecordingPermissionCheckNotifier notifier = new RecordingPermissionCheckNotifier(Runnable::run);
+        notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "world.edit", 1);
+        notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "world.edit", 1);
+        notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "world.build", 0);
+        notifier.onOptionCheck(SUBJECT, ContextSet.empty(), "prefix", null);
+
+        assertEquals(Arrays.asList("world.edit", "world.build"), Arrays.asList(notifier.getKnownPermissions().toArray()));
+        assertEquals(2L, notifier.getPermissionCheckCounts().get("world.edit"));
+        assertEquals(1L, notifier.getPermissionCheckCounts().get("world.build"));
+        assertEquals(1L, notifier.getOptionCheckCounts().get("prefix"));
+        assertEquals(0, notifier.droppedChecks());
+    }
+
+    @Test
+    void testSampleRateAppliedWhenRecorded() {
+        final Queue<Runnable> drains = new ArrayDeque<>();
+        final RecordingPermissionCheckNotifier notifier = new RecordingPermissionCheckNotifier(drains::add);
+        notifier.sampleRate(4);
+        for (int i = 0; i < 8; i++) {
+            notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "world.edit", 1);
+        }
+        // checks still waiting in the buffer keep the rate they were sampled at
+        notifier.sampleRate(1);
+        notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "world.edit", 1);
+
+        assertEquals(9L, notifier.getPermissionCheckCounts().get("world.edit"));
+    }
+
+    @Test
+    void testFullBufferDropsChecks() {
+        final Queue<Runnable> drains = new ArrayDeque<>();
+        final RecordingPermissionCheckNotifier notifier = new RecordingPermissionCheckNotifier(drains::add);
+        for (int i = 0; i < 300; i++) {
+            notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "node." + (i % 3), 1);
+        }
+        assertEquals(1, drains.size());
+        assertEquals(300 - 256, notifier.droppedChecks());
+        // the last check accepted was node.0, so it is the most recent
+        assertEquals(Arrays.asList("node.1", "node.2", "node.0"), Arrays.asList(notifier.getKnownPermissions().toArray()));
+        assertEquals(86L, notifier.getPermissionCheckCounts().get("node.0"));
+        assertEquals(85L, notifier.getPermissionCheckCounts().get("node.1"));
+        assertEquals(85L, notifier.getPermissionCheckCounts().get("node.2"));
+
+        // once drained, checks are counted again
+        drains.poll().run();
+        notifier.onPermissionCheck(SUBJECT, ContextSet.empty(), "node.0", 1);
+        assertEquals(87L, notifier.getPermissionCheckCounts().get("node.0"));
+        assertEquals(300 - 256, notifier.droppedChecks());
+    }
+}
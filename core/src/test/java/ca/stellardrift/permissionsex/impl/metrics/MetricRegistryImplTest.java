@@ -0,0 +1,47 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class MetricRegistryImplTest {
+
+    @Test
+    void testValuesMatchSnapshot() {
+        final MetricRegistryImpl registry = new MetricRegistryImpl();
+        registry.counter("checks").add(3);
+        registry.gauge("subjects", () -> 2.5);
+        registry.timer("bake").record(1_000);
+        registry.timer("bake").record(3_000);
+
+        final Map<String, Number> snapshot = registry.snapshot();
+        assertEquals(snapshot.keySet(), registry.valueTypes().keySet());
+        for (final Map.Entry<String, Number> entry : snapshot.entrySet()) {
+            assertEquals(entry.getValue(), registry.value(entry.getKey()), entry.getKey());
+        }
+        assertEquals(Number.class, registry.valueTypes().get("subjects"));
+        assertEquals(Long.class, registry.valueTypes().get("bake.p99-nanos"));
+        assertNull(registry.value("bake"));
+        assertNull(registry.value("bake.p75-nanos"));
+        assertNull(registry.value("checks.count"));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.subject;
+
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.context.ContextValue;
+import ca.stellardrift.permissionsex.test.PermissionsExTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BakedDataCacheTest extends PermissionsExTest {
+    @Test
+    void testInvalidationRemovesEntries() {
+        final BakedDataCache cache = this.manager().bakedDataCache();
+        final CalculatedSubjectImpl<?> user = (CalculatedSubjectImpl<?>) subject(USER, "alice");
+        final BakedSubjectData first = cache.query(user, ContextSet.empty());
+        assertSame(first, cache.query(user, ContextSet.empty()));
+
+        final int generation = user.generation();
+        user.data().update(ContextSet.empty(), segment -> segment.withPermission("world.edit", 1)).join();
+        assertEquals(generation + 1, user.generation());
+        assertTrue(cache.invalidate(user, generation).isEmpty());
+
+        final BakedSubjectData second = cache.query(user, ContextSet.empty());
+        assertNotSame(first, second);
+        assertEquals(1, second.permissions().get("world.edit"));
+    }
+
+    @Test
+    void testQueryWithOtherSets() {
+        final BakedDataCache cache = this.manager().bakedDataCache();
+        final CalculatedSubjectImpl<?> user = (CalculatedSubjectImpl<?>) subject(USER, "alice");
+        final ContextValue<?> world = new ContextValue<>("world", "nether");
+        final Set<ContextValue<?>> contexts = new HashSet<>(Collections.singleton(world));
+
+        final BakedSubjectData first = cache.query(user, contexts);
+        assertSame(first, cache.query(user, ContextSet.of(world)));
+        contexts.clear(); // the cache kept its own copy of the contexts
+        assertSame(first, cache.query(user, ContextSet.of(world)));
+    }
+
+    @Test
+    void testLookupsCountedOnce() {
+        final BakedDataCache cache = this.manager().bakedDataCache();
+        final CalculatedSubjectImpl<?> user = (CalculatedSubjectImpl<?>) subject(USER, "alice");
+        final long hits = cache.stats().hitCount();
+        final long misses = cache.stats().missCount();
+
+        cache.query(user, new HashSet<>(Collections.singleton(new ContextValue<>("world", "nether"))));
+        cache.query(user, new HashSet<>(Collections.singleton(new ContextValue<>("world", "nether"))));
+        assertEquals(misses + 1, cache.stats().missCount());
+        assertEquals(hits + 1, cache.stats().hitCount());
+    }
+
+    @Test
+    void testListenersReceiveChanges() {
+        final CalculatedSubjectImpl<?> group = (CalculatedSubjectImpl<?>) subject(GROUP, "builders");
+        final CalculatedSubjectImpl<?> user = (CalculatedSubjectImpl<?>) subject(USER, "alice");
+        user.data().update(ContextSet.empty(), segment -> segment.plusParent(GROUP, "builders")).join();
+
+        final List<Map<String, Integer>> changes = new ArrayList<>();
+        final List<ContextSet> changedContexts = new ArrayList<>();
+        user.registerPermissionListener((subject, contexts, changed) -> {
+            changedContexts.add(ContextSet.of(contexts));
+            changes.add(changed);
+        });
+        assertEquals(0, user.permission(ContextSet.empty(), "world.edit"));
+
+        group.data().update(ContextSet.empty(), segment -> segment.withPermission("world.edit", 1)).join();
+        assertEquals(Collections.singletonList(ContextSet.empty()), changedContexts);
+        assertEquals(Collections.singletonList(Collections.singletonMap("world.edit", 1)), changes);
+
+        // an unrelated change is not delivered
+        group.data().update(ContextSet.empty(), segment -> segment.withOption("prefix", "[b]")).join();
+        assertEquals(1, changes.size());
+    }
+}
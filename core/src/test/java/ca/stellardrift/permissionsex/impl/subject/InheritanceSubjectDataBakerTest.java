@@ -0,0 +1,104 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.subject;
+
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.subject.CalculatedSubject;
+import ca.stellardrift.permissionsex.subject.Segment;
+import ca.stellardrift.permissionsex.subject.SubjectRef;
+import ca.stellardrift.permissionsex.test.PermissionsExTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InheritanceSubjectDataBakerTest extends PermissionsExTest {
+    private static void update(final CalculatedSubject subject, final UnaryOperator<Segment> change) {
+        subject.data().update(ContextSet.empty(), change).join();
+    }
+
+    @Test
+    void testGlobsExpanded() {
+        final CalculatedSubject base = subject(GROUP, "base");
+        update(base, segment -> segment.withPermission("base.{read,write}", 1).withPermission("#base.local", 1));
+        final CalculatedSubject builders = subject(GROUP, "builders");
+        update(builders, segment -> segment.plusParent(GROUP, "base").withPermission("build.{stone,wood}", 1));
+        final CalculatedSubject user = subject(USER, "alice");
+        update(user, segment -> segment.plusParent(GROUP, "builders").withPermission("build.wood", -1));
+
+        assertEquals(1, user.permission(ContextSet.empty(), "build.stone"));
+        assertEquals(-1, user.permission(ContextSet.empty(), "build.wood"));
+        assertEquals(0, user.permission(ContextSet.empty(), "build.glass"));
+        assertEquals(1, user.permission(ContextSet.empty(), "base.write"));
+
+        // permissions excluded from inheritance only reach direct children
+        assertEquals(1, base.permission(ContextSet.empty(), "base.local"));
+        assertEquals(1, builders.permission(ContextSet.empty(), "base.local"));
+        assertEquals(0, user.permission(ContextSet.empty(), "base.local"));
+
+        // the new segment is expanded, and unchanged segments keep their expansion
+        update(builders, segment -> segment.withPermission("build.{glass}", 1));
+        assertEquals(1, user.permission(ContextSet.empty(), "build.glass"));
+        assertEquals(1, user.permission(ContextSet.empty(), "build.stone"));
+        assertEquals(1, user.permission(ContextSet.empty(), "base.read"));
+    }
+
+    @Test
+    void testPartialBakesMatchDirectWalk() {
+        final CalculatedSubject base = subject(GROUP, "base");
+        update(base, segment -> segment.withPermission("world.edit", 1).withOption("prefix", "[base]").withFallbackPermission(-1));
+        final CalculatedSubject builders = subject(GROUP, "builders");
+        update(builders, segment -> segment.plusParent(GROUP, "base").withPermission("world.edit", -2).withOption("suffix", "!"));
+
+        final CalculatedSubject alice = subject(USER, "alice");
+        update(alice, segment -> segment.plusParent(GROUP, "builders"));
+        final CalculatedSubject bob = subject(USER, "bob");
+        update(bob, segment -> segment.plusParent(GROUP, "builders"));
+
+        // bob reuses the flattened data of builders calculated for alice
+        for (final CalculatedSubject user : new CalculatedSubject[] {alice, bob}) {
+            assertEquals(builders.permissions(ContextSet.empty()).get("world.edit"), user.permission(ContextSet.empty(), "world.edit"));
+            assertEquals(-1, user.permission(ContextSet.empty(), "unrelated"));
+            assertEquals(Optional.of("[base]"), user.option(ContextSet.empty(), "prefix"));
+            assertEquals(Optional.of("!"), user.option(ContextSet.empty(), "suffix"));
+            assertEquals(Arrays.asList(SubjectRef.subject(GROUP, "builders"), SubjectRef.subject(GROUP, "base")), user.parents(ContextSet.empty()));
+        }
+
+        // a change further up invalidates the flattened data
+        update(base, segment -> segment.withPermission("world.edit", 3));
+        assertEquals(3, alice.permission(ContextSet.empty(), "world.edit"));
+        assertEquals(3, bob.permission(ContextSet.empty(), "world.edit"));
+    }
+
+    @Test
+    void testPartialBakesClearedOnClose() {
+        final CalculatedSubject builders = subject(GROUP, "builders");
+        update(builders, segment -> segment.withPermission("world.edit", 1));
+        final CalculatedSubject alice = subject(USER, "alice");
+        update(alice, segment -> segment.plusParent(GROUP, "builders"));
+        assertEquals(1, alice.permission(ContextSet.empty(), "world.edit"));
+
+        final PartialBakeCache partials = this.manager().partialBakes();
+        assertTrue(partials.size() > 0);
+        this.manager().close();
+        assertEquals(0, partials.size());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.subject;
+
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.context.ContextValue;
+import ca.stellardrift.permissionsex.context.SimpleContextDefinition;
+import ca.stellardrift.permissionsex.impl.context.TimeContextDefinition;
+import ca.stellardrift.permissionsex.subject.CalculatedSubject;
+import ca.stellardrift.permissionsex.subject.ImmutableSubjectData;
+import ca.stellardrift.permissionsex.test.PermissionsExTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SegmentContextIndexTest extends PermissionsExTest {
+    private static final ContextValue<?> NETHER = new ContextValue<>("world", "nether");
+    private static final ContextValue<?> OVERWORLD = new ContextValue<>("world", "overworld");
+    private static final ContextValue<?> BUILD = new ContextValue<>("server-tag", "build");
+    private static final ContextValue<?> SURVIVAL = new ContextValue<>("server-tag", "survival");
+
+    private int subjects;
+
+    @BeforeEach
+    void registerWorld() {
+        this.manager().registerContextDefinition(SimpleContextDefinition.context("world", (subject, consumer) -> {}));
+    }
+
+    private ImmutableSubjectData data(final ContextSet... segments) {
+        final CalculatedSubject subject = this.manager().subjects(GROUP).get("test" + this.subjects++).join();
+        for (final ContextSet contexts : segments) {
+            subject.data().update(contexts, segment -> segment.withPermission("test.permission", 1)).join();
+        }
+        return subject.data().get();
+    }
+
+    @Test
+    void testApplicableLargestFirst() {
+        final ContextSet netherBuild = ContextSet.of(NETHER, BUILD);
+        final ContextSet nether = ContextSet.of(NETHER);
+        final SegmentContextIndex index = SegmentContextIndex.of(data(
+            ContextSet.empty(), nether, ContextSet.of(OVERWORLD), netherBuild, ContextSet.of(SURVIVAL), ContextSet.of(OVERWORLD, BUILD)));
+
+        assertEquals(Arrays.asList(netherBuild, nether, ContextSet.empty()), index.applicable(ContextSet.of(NETHER, BUILD), this.manager(), System.currentTimeMillis()));
+        assertEquals(Arrays.asList(nether, ContextSet.empty()), index.applicable(ContextSet.of(NETHER, new ContextValue<>("server", "lobby")), this.manager(), System.currentTimeMillis()));
+        assertEquals(Collections.singletonList(ContextSet.empty()), index.applicable(ContextSet.empty(), this.manager(), System.currentTimeMillis()));
+    }
+
+    @Test
+    void testNextTimeBoundary() {
+        final TimeContextDefinition before = TimeContextDefinition.BEFORE_TIME;
+        final ZonedDateTime now = before.currentTime();
+        final long nowMillis = now.toInstant().toEpochMilli();
+        final ContextValue<?> laterEnd = before.createValue(now.plusHours(2));
+        final ContextValue<?> end = before.createValue(now.plusHours(1));
+        final ContextValue<?> ended = before.createValue(now.minusHours(1));
+        final SegmentContextIndex index = SegmentContextIndex.of(data(
+            ContextSet.of(laterEnd), ContextSet.of(end, NETHER), ContextSet.of(ended)));
+
+        assertEquals(before.boundary(now.plusHours(1)), index.nextBoundary(ContextSet.empty(), this.manager(), nowMillis));
+        assertEquals(Collections.singletonList(ContextSet.of(laterEnd)), index.applicable(ContextSet.empty(), this.manager(), nowMillis));
+        // past the first boundary, only the later one is left
+        assertEquals(before.boundary(now.plusHours(2)), index.nextBoundary(ContextSet.empty(), this.manager(), nowMillis + 3_600_000));
+        // an explicitly queried time is not matched against the current time
+        assertEquals(Long.MAX_VALUE, index.nextBoundary(ContextSet.of(before.createValue(now)), this.manager(), nowMillis));
+        assertEquals(Long.MAX_VALUE, SegmentContextIndex.of(data(ContextSet.of(NETHER))).nextBoundary(ContextSet.empty(), this.manager(), nowMillis));
+    }
+
+    @Test
+    void testEmptyData() {
+        final SegmentContextIndex index = SegmentContextIndex.of(data());
+        assertEquals(Collections.emptyList(), index.applicable(ContextSet.of(NETHER), this.manager(), System.currentTimeMillis()));
+    }
+
+    @Test
+    void testMergeKeepsOrder() {
+        final ContextSet large = ContextSet.of(NETHER, BUILD);
+        final ContextSet nether = ContextSet.of(NETHER);
+        final ContextSet build = ContextSet.of(BUILD);
+
+        assertEquals(Arrays.asList(large, nether, build, ContextSet.empty()),
+            SegmentContextIndex.merge(Arrays.asList(large, nether, ContextSet.empty()), Arrays.asList(build, ContextSet.empty())));
+        assertEquals(Arrays.asList(large, build, nether),
+            SegmentContextIndex.merge(Collections.singletonList(build), Arrays.asList(large, nether)));
+    }
+}
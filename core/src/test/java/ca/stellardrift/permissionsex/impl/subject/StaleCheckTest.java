@@ -0,0 +1,117 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.subject;
+
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.subject.CalculatedSubject;
+import ca.stellardrift.permissionsex.test.EmptyTestConfiguration;
+import ca.stellardrift.permissionsex.test.PermissionsExTest;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks while a bake is in progress, which only happens with parallel baking here,
+ * since any bake with its data already loaded completes right away.
+ */
+public class StaleCheckTest extends PermissionsExTest {
+    private static final int STALE_DEFAULT = -1;
+
+    private final Queue<Runnable> paused = new ConcurrentLinkedQueue<>();
+    private volatile boolean pause;
+
+    @Override
+    protected EmptyTestConfiguration configuration() {
+        return super.configuration()
+            .parallelBaking(true)
+            .staleChecks(true, STALE_DEFAULT);
+    }
+
+    @Override
+    protected Executor executor() {
+        return task -> {
+            if (this.pause) {
+                this.paused.add(task);
+            } else {
+                task.run();
+            }
+        };
+    }
+
+    private void resume() {
+        this.pause = false;
+        @Nullable Runnable task;
+        while ((task = this.paused.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    void testPreviousValueThenDefault() {
+        final CalculatedSubject builders = subject(GROUP, "builders");
+        builders.data().update(ContextSet.empty(), segment -> segment.withPermission("world.edit", 1)).join();
+        subject(GROUP, "members").data().update(ContextSet.empty(), segment -> segment.withPermission("chat", 1)).join();
+        final CalculatedSubject user = subject(USER, "alice");
+        user.data().update(ContextSet.empty(), segment -> segment.plusParent(GROUP, "builders").plusParent(GROUP, "members")).join();
+        final BakedDataCache cache = this.manager().bakedDataCache();
+
+        // nothing has been baked yet
+        this.pause = true;
+        assertEquals(STALE_DEFAULT, user.permission(ContextSet.empty(), "world.edit"));
+        assertEquals(STALE_DEFAULT, user.permission(ContextSet.empty(), "chat"));
+        assertEquals(2, cache.defaultResults());
+
+        this.resume();
+        assertEquals(1, user.permission(ContextSet.empty(), "world.edit"));
+        assertEquals(0, cache.staleResults());
+
+        // a change is baked in the background, and the previous data is used meanwhile
+        builders.data().update(ContextSet.empty(), segment -> segment.withPermission("world.edit", -1)).join();
+        this.pause = true;
+        assertEquals(1, user.permission(ContextSet.empty(), "world.edit"));
+        assertEquals(1, user.permission(ContextSet.empty(), "chat"));
+        assertEquals(2, cache.staleResults());
+
+        this.resume();
+        assertEquals(-1, user.permission(ContextSet.empty(), "world.edit"));
+        assertEquals(2, cache.staleResults());
+        assertEquals(2, cache.defaultResults());
+    }
+
+    @Test
+    void testPreviousValueWithinBudget() {
+        final CalculatedSubject user = subject(USER, "alice");
+        user.data().update(ContextSet.empty(), segment -> segment.withPermission("world.edit", 1)).join();
+        final BakedDataCache cache = this.manager().bakedDataCache();
+        cache.maximumBytes(0);
+        assertEquals(1, user.permission(ContextSet.empty(), "world.edit"));
+
+        // the previous data did not fit in the budget, so the default is used meanwhile
+        user.data().update(ContextSet.empty(), segment -> segment.withPermission("world.edit", -1)).join();
+        this.pause = true;
+        assertEquals(STALE_DEFAULT, user.permission(ContextSet.empty(), "world.edit"));
+        assertEquals(0, cache.staleResults());
+
+        this.resume();
+        assertEquals(-1, user.permission(ContextSet.empty(), "world.edit"));
+    }
+}
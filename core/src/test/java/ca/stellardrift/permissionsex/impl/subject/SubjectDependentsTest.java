@@ -0,0 +1,65 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.subject;
+
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.subject.CalculatedSubject;
+import ca.stellardrift.permissionsex.subject.SubjectRef;
+import ca.stellardrift.permissionsex.test.PermissionsExTest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SubjectDependentsTest extends PermissionsExTest {
+    @Test
+    void testParentEditInvalidatesDependents() {
+        final CalculatedSubject base = subject(GROUP, "base");
+        final CalculatedSubject builders = subject(GROUP, "builders");
+        builders.data().update(ContextSet.empty(), segment -> segment.plusParent(GROUP, "base")).join();
+        final CalculatedSubject user = subject(USER, "alice");
+        user.data().update(ContextSet.empty(), segment -> segment.plusParent(GROUP, "builders")).join();
+        final CalculatedSubject unrelated = subject(USER, "bob");
+
+        assertEquals(0, user.permission(ContextSet.empty(), "world.edit"));
+        assertEquals(0, builders.permission(ContextSet.empty(), "world.edit"));
+        assertEquals(0, unrelated.permission(ContextSet.empty(), "world.edit"));
+
+        // the grandparent's change reaches every subject inheriting it, directly or not
+        base.data().update(ContextSet.empty(), segment -> segment.withPermission("world.edit", 1)).join();
+        assertEquals(1, builders.permission(ContextSet.empty(), "world.edit"));
+        assertEquals(1, user.permission(ContextSet.empty(), "world.edit"));
+
+        builders.data().update(ContextSet.empty(), segment -> segment.withPermission("world.edit", -1)).join();
+        assertEquals(-1, user.permission(ContextSet.empty(), "world.edit"));
+        assertEquals(1, base.permission(ContextSet.empty(), "world.edit"));
+    }
+
+    @Test
+    void testDependentsRecordedWhenBaking() {
+        final CalculatedSubject builders = subject(GROUP, "builders");
+        builders.data().update(ContextSet.empty(), segment -> segment.plusParent(GROUP, "base")).join();
+        final CalculatedSubject user = subject(USER, "alice");
+        user.data().update(ContextSet.empty(), segment -> segment.plusParent(GROUP, "builders")).join();
+        user.permissions(ContextSet.empty());
+
+        final SubjectDependents dependents = this.manager().subjectDependents();
+        assertTrue(dependents.dependents(SubjectRef.subject(GROUP, "base")).contains(user));
+        assertTrue(dependents.dependents(SubjectRef.subject(GROUP, "builders")).contains(user));
+        assertTrue(dependents.dependents(user.identifier()).isEmpty());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.subject;
+
+import ca.stellardrift.permissionsex.context.ContextSet;
+import ca.stellardrift.permissionsex.context.ContextValue;
+import ca.stellardrift.permissionsex.impl.logging.ProfilingPermissionCheckNotifier;
+import ca.stellardrift.permissionsex.impl.util.HeavyHitters;
+import ca.stellardrift.permissionsex.subject.SubjectRef;
+import ca.stellardrift.permissionsex.subject.SubjectTypeCollection;
+import ca.stellardrift.permissionsex.test.PermissionsExTest;
+import ca.stellardrift.permissionsex.util.PermissionKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SubjectTypeCollectionImplTest extends PermissionsExTest {
+    private static final ContextValue<?> BUILD = new ContextValue<>("server-tag", "build");
+
+    private SubjectTypeCollection<String> users() {
+        final SubjectTypeCollection<String> users = this.manager().subjects(USER);
+        users.get("alice").join().data().update(ContextSet.empty(), segment -> segment.withPermission("world.edit", 1)).join();
+        users.get("bob").join().data().update(ContextSet.empty(), segment -> segment.withPermission("world.edit", -1)).join();
+        users.get("carol").join().data().update(ContextSet.of(BUILD), segment -> segment.withPermission("world.edit", 1)).join();
+        return users;
+    }
+
+    @Test
+    void testCheckAll() {
+        final SubjectTypeCollection<String> users = users();
+
+        final Map<String, Integer> expected = new HashMap<>();
+        expected.put("alice", 1);
+        expected.put("bob", -1);
+        expected.put("carol", 0);
+        assertEquals(expected, users.checkAll("world.edit"));
+
+        expected.put("carol", 1);
+        assertEquals(expected, users.checkAll("world.edit", ContextSet.of(BUILD)));
+    }
+
+    @Test
+    void testCheckAllDoesNotRegister() {
+        final String permission = "dynamic.checkall." + System.nanoTime();
+        users().checkAll(permission);
+        assertNotSame(PermissionKey.unregistered(permission), PermissionKey.unregistered(permission));
+    }
+
+    @Test
+    void testCheckAllReported() {
+        final SubjectTypeCollection<String> users = users();
+        this.manager().profiling(true);
+        users.checkAll("world.edit");
+
+        final ProfilingPermissionCheckNotifier profiler = this.manager().profiler();
+        assertNotNull(profiler);
+        final ProfilingPermissionCheckNotifier.Profile profile = profiler.profile(10);
+        assertEquals(1, profile.permissions().size());
+        assertEquals("world.edit", profile.permissions().get(0).item());
+        assertEquals(3, profile.permissions().get(0).count());
+        final List<HeavyHitters.Entry<SubjectRef<?>>> subjects = profile.checkedSubjects();
+        assertEquals(3, subjects.size());
+        for (final HeavyHitters.Entry<SubjectRef<?>> subject : subjects) {
+            assertEquals(1, subject.count());
+        }
+    }
+
+    @Test
+    void testBakesTimed() {
+        final SubjectTypeCollection<String> users = users();
+        final long bakes = this.manager().metrics().timer("bake").count();
+        users.get("alice").join().permission(ContextSet.empty(), "world.edit");
+        assertTrue(this.manager().metrics().timer("bake").count() > bakes);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.impl.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HeavyHittersTest {
+
+    @Test
+    void testExactWhenUnderCapacity() {
+        final HeavyHitters<String> hitters = new HeavyHitters<>(4);
+        hitters.add("a", 3);
+        hitters.add("b");
+        hitters.add("a");
+        hitters.add("c", 2);
+
+        final List<HeavyHitters.Entry<String>> top = hitters.top(2);
+        assertEquals(2, top.size());
+        assertEquals("a", top.get(0).item());
+        assertEquals(4, top.get(0).count());
+        assertEquals(0, top.get(0).error());
+        assertEquals("c", top.get(1).item());
+        assertEquals(2, top.get(1).count());
+    }
+
+    @Test
+    void testFrequentItemsSurviveEviction() {
+        final HeavyHitters<String> hitters = new HeavyHitters<>(3);
+        for (int i = 0; i < 1000; i++) {
+            hitters.add("hot");
+            hitters.add("rare." + i);
+        }
+
+        final HeavyHitters.Entry<String> first = hitters.top(1).get(0);
+        assertEquals("hot", first.item());
+        assertTrue(first.count() >= 1000);
+        assertTrue(first.count() - first.error() <= 1000);
+    }
+
+    @Test
+    void testReplacedItemInheritsCount() {
+        final HeavyHitters<String> hitters = new HeavyHitters<>(1);
+        hitters.add("a", 5);
+        hitters.add("b");
+
+        final HeavyHitters.Entry<String> entry = hitters.top(1).get(0);
+        assertEquals("b", entry.item());
+        assertEquals(6, entry.count());
+        assertEquals(5, entry.error());
+    }
+
+    @Test
+    void testBoundsHoldForWeightedStream() {
+        final HeavyHitters<Integer> hitters = new HeavyHitters<>(16);
+        final Map<Integer, Long> exact = new HashMap<>();
+        final Random random = new Random(42);
+        long total = 0;
+        for (int i = 0; i < 10_000; i++) {
+            final int item = (int) Math.abs(random.nextGaussian() * 20);
+            final long weight = 1 + random.nextInt(4);
+            hitters.add(item, weight);
+            exact.merge(item, weight, Long::sum);
+            total += weight;
+        }
+
+        final List<HeavyHitters.Entry<Integer>> top = hitters.top(100);
+        assertEquals(16, top.size());
+        long counted = 0;
+        long previous = Long.MAX_VALUE;
+        for (final HeavyHitters.Entry<Integer> entry : top) {
+            final long actual = exact.get(entry.item());
+            assertTrue(entry.count() >= actual, entry::toString);
+            assertTrue(entry.count() - entry.error() <= actual, entry::toString);
+            assertTrue(entry.count() <= previous, "top items are in order of count");
+            previous = entry.count();
+            counted += entry.count();
+        }
+        assertEquals(total, counted);
+        assertEquals(top.subList(0, 3).toString(), hitters.top(3).toString());
+    }
+}
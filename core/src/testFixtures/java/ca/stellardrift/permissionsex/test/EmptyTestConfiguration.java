@@ -0,0 +1,119 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.test;
+
+import ca.stellardrift.permissionsex.datastore.ProtoDataStore;
+import ca.stellardrift.permissionsex.impl.backend.memory.MemoryDataStore;
+import ca.stellardrift.permissionsex.impl.config.EmptyPlatformConfiguration;
+import ca.stellardrift.permissionsex.impl.config.PermissionsExConfiguration;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A configuration storing all data in memory, with every optional feature disabled
+ * unless a test enables it.
+ */
+public final class EmptyTestConfiguration implements PermissionsExConfiguration<EmptyPlatformConfiguration> {
+    private final ProtoDataStore<?> defaultDataStore = MemoryDataStore.create("test");
+    private final EmptyPlatformConfiguration platformConfig = new EmptyPlatformConfiguration();
+    private boolean parallelBaking;
+    private boolean staleChecks;
+    private int staleCheckDefault;
+    private int checkSampleRate = 1;
+
+    public EmptyTestConfiguration parallelBaking(final boolean parallelBaking) {
+        this.parallelBaking = parallelBaking;
+        return this;
+    }
+
+    public EmptyTestConfiguration staleChecks(final boolean staleChecks, final int staleCheckDefault) {
+        this.staleChecks = staleChecks;
+        this.staleCheckDefault = staleCheckDefault;
+        return this;
+    }
+
+    public EmptyTestConfiguration checkSampleRate(final int checkSampleRate) {
+        this.checkSampleRate = checkSampleRate;
+        return this;
+    }
+
+    @Override
+    public @Nullable ProtoDataStore<?> getDataStore(final String name) {
+        return name.equals(this.defaultDataStore.identifier()) ? this.defaultDataStore : null;
+    }
+
+    @Override
+    public ProtoDataStore<?> getDefaultDataStore() {
+        return this.defaultDataStore;
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return false;
+    }
+
+    @Override
+    public boolean isParallelBakingEnabled() {
+        return this.parallelBaking;
+    }
+
+    @Override
+    public long getBakeCacheBytes() {
+        return 16 * 1024 * 1024;
+    }
+
+    @Override
+    public boolean isStaleChecksEnabled() {
+        return this.staleChecks;
+    }
+
+    @Override
+    public int getStaleCheckDefault() {
+        return this.staleCheckDefault;
+    }
+
+    @Override
+    public int getCheckSampleRate() {
+        return this.checkSampleRate;
+    }
+
+    @Override
+    public boolean isJmxMetricsEnabled() {
+        return false;
+    }
+
+    @Override
+    public List<String> getServerTags() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void validate() {
+    }
+
+    @Override
+    public EmptyPlatformConfiguration getPlatformConfig() {
+        return this.platformConfig;
+    }
+
+    @Override
+    public PermissionsExConfiguration<EmptyPlatformConfiguration> reload() {
+        return this;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * PermissionsEx
+ * Copyright (C) zml and PermissionsEx contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.stellardrift.permissionsex.test;
+
+import ca.stellardrift.permissionsex.exception.PermissionsLoadingException;
+import ca.stellardrift.permissionsex.impl.PermissionsEx;
+import ca.stellardrift.permissionsex.impl.config.EmptyPlatformConfiguration;
+import ca.stellardrift.permissionsex.subject.CalculatedSubject;
+import ca.stellardrift.permissionsex.subject.SubjectType;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
+/**
+ * A test running against a fresh engine, with its data held in memory.
+ *
+ * <p>Asynchronous tasks are run on the thread submitting them, so every operation
+ * has completed by the time it returns unless a test provides another executor.</p>
+ */
+public abstract class PermissionsExTest {
+    protected static final SubjectType<String> USER = SubjectType.stringIdentBuilder("user").build();
+    protected static final SubjectType<String> GROUP = SubjectType.stringIdentBuilder("group").build();
+
+    private @MonotonicNonNull PermissionsEx<EmptyPlatformConfiguration> manager;
+
+    @BeforeEach
+    void setUpEngine(final TestInfo info, final @TempDir Path tempDir) throws PermissionsLoadingException {
+        this.manager = new PermissionsEx<>(LoggerFactory.getLogger(info.getDisplayName()), tempDir, this.executor(), url -> null);
+        this.manager.initialize(this.configuration());
+    }
+
+    @AfterEach
+    void tearDownEngine() {
+        if (this.manager != null) {
+            this.manager.close();
+        }
+    }
+
+    /**
+     * Create the configuration for the engine under test.
+     *
+     * @return the configuration
+     */
+    protected EmptyTestConfiguration configuration() {
+        return new EmptyTestConfiguration();
+    }
+
+    /**
+     * Get the executor the engine will run asynchronous tasks on.
+     *
+     * @return the executor
+     */
+    protected Executor executor() {
+        return Runnable::run;
+    }
+
+    protected PermissionsEx<EmptyPlatformConfiguration> manager() {
+        if (this.manager == null) {
+            throw new IllegalStateException("The engine has not been set up yet");
+        }
+        return this.manager;
+    }
+
+    /**
+     * Get a subject from the engine under test, waiting for it to be loaded.
+     *
+     * @param type the subject's type
+     * @param identifier the subject's identifier
+     * @return the subject
+     */
+    protected CalculatedSubject subject(final SubjectType<String> type, final String identifier) {
+        return this.manager().subjects(type).get(identifier).join();
+    }
+}